@@ -0,0 +1,91 @@
+package com.plomteux.ncconnector.mapper;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.model.Sailings;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of one whole synthetic snapshot per operation: upstream cruises to entities, the per-sailing room type
+ * prices, and stored sailings to overviews. Run with {@code -prof gc} to see the bytes allocated per snapshot.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+    @Param("2000")
+    private int cruises;
+    @Param("24")
+    private int sailingsPerCruise;
+
+    private AnnotationConfigApplicationContext context;
+    private CruiseDetailsMapper cruiseDetailsMapper;
+    private SailingsMapper sailingsMapper;
+    private CruiseOverViewMapper cruiseOverViewMapper;
+    private List<CruiseDetails> catalogue;
+    private List<Sailings> sailings;
+    private List<SailingsEntity> sailingsEntities;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new AnnotationConfigApplicationContext(CruiseDetailsMapperImpl.class, SailingsMapperImpl.class, CruiseOverViewMapperImpl.class);
+        cruiseDetailsMapper = context.getBean(CruiseDetailsMapper.class);
+        sailingsMapper = context.getBean(SailingsMapper.class);
+        cruiseOverViewMapper = context.getBean(CruiseOverViewMapper.class);
+        catalogue = SyntheticCatalogue.cruises(cruises, sailingsPerCruise, 42);
+        catalogue.forEach(cruise -> cruise.getSailings().forEach(sailing ->
+                sailing.getPricing().forEach(pricing -> pricing.setTotalPrice(pricing.getCombinedPrice()))));
+        sailings = catalogue.stream()
+                .flatMap(cruise -> cruise.getSailings().stream())
+                .toList();
+        sailingsEntities = catalogue.stream()
+                .map(cruiseDetailsMapper::toCruiseDetailsEntity)
+                .map(CruiseDetailsEntity::getSailingsEntities)
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void toCruiseDetailsEntity(Blackhole blackhole) {
+        for (CruiseDetails cruise : catalogue) {
+            blackhole.consume(cruiseDetailsMapper.toCruiseDetailsEntity(cruise));
+        }
+    }
+
+    @Benchmark
+    public void mapTotalPriceToPricingEntities(Blackhole blackhole) {
+        for (Sailings sailing : sailings) {
+            SailingsEntity sailingsEntity = new SailingsEntity();
+            sailingsMapper.mapTotalPriceToPricingEntities(sailing, sailingsEntity);
+            blackhole.consume(sailingsEntity);
+        }
+    }
+
+    @Benchmark
+    public void toCruiseOverView(Blackhole blackhole) {
+        for (SailingsEntity sailingsEntity : sailingsEntities) {
+            blackhole.consume(cruiseOverViewMapper.toCruiseOverView(sailingsEntity));
+        }
+    }
+}
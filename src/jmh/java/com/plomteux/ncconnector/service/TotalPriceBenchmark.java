@@ -0,0 +1,71 @@
+package com.plomteux.ncconnector.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.objenesis.ObjenesisStd;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the taxes and fees response and applying total prices to every sailing of one synthetic snapshot per
+ * operation. The service is created without its collaborators, which neither path uses.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class TotalPriceBenchmark {
+    @Param("2000")
+    private int cruises;
+    @Param("24")
+    private int sailingsPerCruise;
+
+    private NCService ncService;
+    private List<CruiseDetails> catalogue;
+    private JsonNode pricesNode;
+    private Map<String, BigDecimal> totalPrices;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ncService = new ObjenesisStd(true).newInstance(NCService.class);
+        ReflectionTestUtils.setField(ncService, "FEES_MULTIPLIER", new BigDecimal("27.10"));
+        catalogue = SyntheticCatalogue.cruises(cruises, sailingsPerCruise, 42);
+        Random random = new Random(42);
+        ArrayNode prices = new ObjectMapper().createArrayNode();
+        catalogue.forEach(cruise -> {
+            ObjectNode price = prices.addObject();
+            price.put("cruiseCode", cruise.getCode());
+            price.putObject("taxesAndFees").put("amount", BigDecimal.valueOf(5000 + random.nextInt(50000), 2));
+        });
+        pricesNode = prices;
+        totalPrices = ncService.extractTotalPrices(pricesNode);
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> extractTotalPrices() {
+        return ncService.extractTotalPrices(pricesNode);
+    }
+
+    @Benchmark
+    public List<CruiseDetails> applyTotalPrices() {
+        ncService.applyTotalPrices(catalogue, totalPrices);
+        return catalogue;
+    }
+}
@@ -0,0 +1,197 @@
+package com.plomteux.ncconnector.configuration;
+
+import com.plomteux.ncconnector.repository.SailingsPartitions;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@AllArgsConstructor
+@Slf4j
+public class DatabaseMigrations implements ApplicationRunner {
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "cruise_details_entity", "cruise_details_entity_seq",
+            "sailings_entity", "sailings_entity_seq",
+            "destination_code_entity", "destination_code_entity_seq",
+            "ports_of_call_entity", "ports_of_call_entity_seq");
+    private static final int ALLOCATION_SIZE = 50;
+    private static final String PLAIN_SAILINGS = "sailings_entity_plain";
+    private static final Map<String, List<String>> PRICE_COLUMNS = Map.of(
+            "sailings_entity", List.of("studio", "inside", "ocean_view", "balcony", "mini_suite", "suite", "haven", "spa", "old_price"),
+            "price_drop_entity", List.of("old_price", "new_price", "price_difference"));
+    private static final List<Dictionary> DICTIONARIES = List.of(
+            new Dictionary("destination_code_entity", "destination_code", "cruise_destination", "destination_code_entity_id", "idx_destination_code"),
+            new Dictionary("ports_of_call_entity", "ports_of_call", "cruise_port_of_call", "ports_of_call_entity_id", "idx_ports_of_call"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SailingsPartitions sailingsPartitions;
+
+    private record Dictionary(String table, String code, String links, String link, String uniqueIndex) {
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        closeSnapshotRows();
+        if (isPostgreSql()) {
+            alignSequences();
+            convertPricesToCents();
+            DICTIONARIES.forEach(this::moveToDictionary);
+            collapseCruiseDuplicates();
+            partitionSailings();
+            sailingsPartitions.ensureMonthsAhead(LocalDate.now());
+        }
+    }
+
+    boolean isPostgreSql() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equalsIgnoreCase(product);
+    }
+
+    // ids used to come from identity columns; pooled allocation must start past the highest existing id
+    private void alignSequences() {
+        SEQUENCES.forEach((table, sequence) -> {
+            Long value = jdbcTemplate.queryForObject(
+                    "SELECT setval('" + sequence + "', GREATEST((SELECT COALESCE(MAX(id), 0) FROM " + table + ") + " + ALLOCATION_SIZE + ", "
+                            + "(SELECT last_value FROM " + sequence + ")))",
+                    Long.class);
+            log.debug("Sequence {} aligned to {}", sequence, value);
+        });
+    }
+
+    // prices used to be numeric columns
+    private void convertPricesToCents() {
+        PRICE_COLUMNS.forEach((table, columns) -> columns.forEach(column -> {
+            String type = jdbcTemplate.query(
+                    "SELECT data_type FROM information_schema.columns WHERE table_name = ? AND column_name = ?",
+                    rs -> rs.next() ? rs.getString(1) : null, table, column);
+            if ("numeric".equalsIgnoreCase(type)) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN " + column
+                        + " TYPE bigint USING round(" + column + " * 100)");
+                log.info("Converted {}.{} to cents", table, column);
+            }
+        }));
+    }
+
+    // destinations and ports of call used to be one row per cruise
+    private void moveToDictionary(Dictionary dictionary) {
+        Integer perCruise = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM information_schema.columns WHERE table_name = ? AND column_name = 'cruise_details_entity_id'",
+                Integer.class, dictionary.table());
+        if (perCruise == null || perCruise == 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            int links = jdbcTemplate.update("INSERT INTO " + dictionary.links() + " (cruise_details_entity_id, " + dictionary.link() + ") "
+                    + "SELECT d.cruise_details_entity_id, k.id FROM " + dictionary.table() + " d "
+                    + "JOIN (SELECT " + dictionary.code() + ", min(id) AS id FROM " + dictionary.table() + " GROUP BY " + dictionary.code() + ") k "
+                    + "ON k." + dictionary.code() + " = d." + dictionary.code() + " "
+                    + "WHERE d.cruise_details_entity_id IS NOT NULL ORDER BY d.id");
+            int duplicates = jdbcTemplate.update("DELETE FROM " + dictionary.table() + " d USING " + dictionary.table() + " k "
+                    + "WHERE k." + dictionary.code() + " = d." + dictionary.code() + " AND k.id < d.id");
+            jdbcTemplate.update("DELETE FROM " + dictionary.table() + " WHERE " + dictionary.code() + " IS NULL");
+            jdbcTemplate.execute("ALTER TABLE " + dictionary.table() + " DROP COLUMN cruise_details_entity_id");
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + dictionary.uniqueIndex() + " ON " + dictionary.table() + " (" + dictionary.code() + ")");
+            log.info("Moved {} to a dictionary: {} links written, {} duplicate rows removed", dictionary.table(), links, duplicates);
+        });
+    }
+
+    // cruises used to get a new row every day; the latest row of a code holds the latest itinerary
+    private void collapseCruiseDuplicates() {
+        Integer duplicated = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM (SELECT code FROM cruise_details_entity GROUP BY code HAVING count(*) > 1) d", Integer.class);
+        if (duplicated == null || duplicated == 0) {
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_cruise_details_code ON cruise_details_entity (code)");
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TEMPORARY TABLE cruise_code_latest ON COMMIT DROP AS "
+                    + "SELECT code, max(id) AS id FROM cruise_details_entity GROUP BY code");
+            int sailings = jdbcTemplate.update("UPDATE sailings_entity s SET cruise_details_entity_id = k.id "
+                    + "FROM cruise_details_entity c JOIN cruise_code_latest k ON k.code = c.code "
+                    + "WHERE s.cruise_details_entity_id = c.id AND c.id <> k.id");
+            for (String links : List.of("cruise_destination", "cruise_port_of_call")) {
+                jdbcTemplate.update("DELETE FROM " + links + " l USING cruise_details_entity c JOIN cruise_code_latest k ON k.code = c.code "
+                        + "WHERE l.cruise_details_entity_id = c.id AND c.id <> k.id");
+            }
+            int cruises = jdbcTemplate.update("DELETE FROM cruise_details_entity c USING cruise_code_latest k "
+                    + "WHERE k.code = c.code AND c.id <> k.id");
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_cruise_details_code ON cruise_details_entity (code)");
+            log.info("Collapsed {} duplicated cruise codes: {} rows removed, {} sailings moved", duplicated, cruises, sailings);
+        });
+    }
+
+    // Rows move one month per transaction, so an interrupted migration resumes from what is left in the old table.
+    // The primary key has to include the partition key, and published_date is never updated, so no write moves a
+    // row between partitions.
+    private void partitionSailings() {
+        if (!sailingsPartitions.isPartitioned()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDate oldest = jdbcTemplate.queryForObject("SELECT MIN(published_date) FROM sailings_entity", LocalDate.class);
+                LocalDate today = LocalDate.now();
+                jdbcTemplate.execute("ALTER TABLE sailings_entity RENAME TO " + PLAIN_SAILINGS);
+                jdbcTemplate.execute("ALTER INDEX IF EXISTS sailings_entity_pkey RENAME TO " + PLAIN_SAILINGS + "_pkey");
+                jdbcTemplate.execute("CREATE TABLE sailings_entity (LIKE " + PLAIN_SAILINGS + " INCLUDING DEFAULTS) PARTITION BY RANGE (published_date)");
+                jdbcTemplate.execute("ALTER TABLE sailings_entity ADD PRIMARY KEY (id, published_date)");
+                sailingsPartitions.createDefault();
+                sailingsPartitions.createMonths(oldest != null && oldest.isBefore(today) ? oldest : today,
+                        today.plusMonths(SailingsPartitions.MONTHS_AHEAD));
+            });
+        }
+        if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, PLAIN_SAILINGS) != Boolean.TRUE) {
+            return;
+        }
+        List<LocalDate> months = jdbcTemplate.queryForList(
+                "SELECT DISTINCT date_trunc('month', published_date)::date FROM " + PLAIN_SAILINGS
+                        + " WHERE published_date IS NOT NULL ORDER BY 1", LocalDate.class);
+        int rows = 0;
+        for (LocalDate month : months) {
+            Integer moved = transactionTemplate.execute(status -> jdbcTemplate.update(
+                    "WITH moved AS (DELETE FROM " + PLAIN_SAILINGS + " WHERE published_date >= ? AND published_date < ? RETURNING *) "
+                            + "INSERT INTO sailings_entity SELECT * FROM moved", month, month.plusMonths(1)));
+            rows += moved != null ? moved : 0;
+            log.debug("Moved {} sailings published in {} to the partitioned table", moved, month);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            Long left = jdbcTemplate.queryForObject("SELECT count(*) FROM " + PLAIN_SAILINGS, Long.class);
+            long misplaced = sailingsPartitions.defaultPartitionRows();
+            if (left != null && left > 0 || misplaced > 0) {
+                throw new IllegalStateException("Partitioning sailings_entity left " + left + " rows without a published date in "
+                        + PLAIN_SAILINGS + " and " + misplaced + " rows in " + SailingsPartitions.DEFAULT_PARTITION);
+            }
+            List<String> indexes = jdbcTemplate.queryForList(
+                    "SELECT indexdef FROM pg_indexes WHERE tablename = ? AND indexname <> ?",
+                    String.class, PLAIN_SAILINGS, PLAIN_SAILINGS + "_pkey");
+            List<String> foreignKeys = jdbcTemplate.queryForList(
+                    "SELECT 'ALTER TABLE ' || conrelid::regclass || ' DROP CONSTRAINT ' || quote_ident(conname) "
+                            + "FROM pg_constraint WHERE contype = 'f' AND confrelid = ?::regclass",
+                    String.class, PLAIN_SAILINGS);
+            foreignKeys.forEach(jdbcTemplate::execute);
+            jdbcTemplate.execute("DROP TABLE " + PLAIN_SAILINGS);
+            indexes.forEach(index -> jdbcTemplate.execute(index.replaceFirst(" ON (\\S+\\.)?" + PLAIN_SAILINGS + " ", " ON $1sailings_entity ")));
+            jdbcTemplate.execute("ALTER TABLE sailings_entity ADD CONSTRAINT fk_sailings_cruise_details "
+                    + "FOREIGN KEY (cruise_details_entity_id) REFERENCES cruise_details_entity");
+        });
+        log.info("Partitioned sailings_entity by published_date: {} rows moved", rows);
+    }
+
+    // rows written before validity intervals existed were valid for their published day only
+    private void closeSnapshotRows() {
+        int updated = jdbcTemplate.update("UPDATE sailings_entity SET valid_to = published_date WHERE valid_to IS NULL");
+        if (updated > 0) {
+            log.info("Set the validity end of {} snapshot sailings", updated);
+        }
+    }
+}
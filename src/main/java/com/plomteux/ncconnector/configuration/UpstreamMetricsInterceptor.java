@@ -0,0 +1,107 @@
+package com.plomteux.ncconnector.configuration;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Bytes per upstream call; response bytes are counted as the body is read, so streamed responses count too. */
+@AllArgsConstructor
+class UpstreamMetricsInterceptor implements ClientHttpRequestInterceptor {
+    static final String REQUEST_BYTES = "ncl.upstream.request.bytes";
+    static final String RESPONSE_BYTES = "ncl.upstream.response.bytes";
+
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        String uri = request.getURI().getPath();
+        summary(REQUEST_BYTES, uri).record(body.length);
+        return new CountingResponse(execution.execute(request, body), summary(RESPONSE_BYTES, uri));
+    }
+
+    private DistributionSummary summary(String name, String uri) {
+        return DistributionSummary.builder(name)
+                .baseUnit("bytes")
+                .tag("uri", uri)
+                .register(meterRegistry);
+    }
+
+    private static final class CountingResponse implements ClientHttpResponse {
+        private final ClientHttpResponse response;
+        private final DistributionSummary summary;
+        private long bytes;
+        private boolean recorded;
+        private InputStream body;
+
+        private CountingResponse(ClientHttpResponse response, DistributionSummary summary) {
+            this.response = response;
+            this.summary = summary;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        @Deprecated
+        public int getRawStatusCode() throws IOException {
+            return response.getStatusCode().value();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new FilterInputStream(response.getBody()) {
+                    @Override
+                    public int read() throws IOException {
+                        int read = super.read();
+                        if (read >= 0) {
+                            bytes++;
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int read = super.read(buffer, offset, length);
+                        if (read > 0) {
+                            bytes += read;
+                        }
+                        return read;
+                    }
+                };
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            if (!recorded) {
+                recorded = true;
+                summary.record(bytes);
+            }
+            response.close();
+        }
+    }
+}
@@ -1,73 +1,113 @@
 package com.plomteux.ncconnector.controller;
 
 import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.DurationBucket;
+import com.plomteux.ncconnector.entity.Prices;
+import com.plomteux.ncconnector.entity.RoomType;
 import com.plomteux.ncconnector.entity.SailingsEntity;
-import com.plomteux.ncconnector.mapper.CruiseDetailsMapper;
 import com.plomteux.ncconnector.mapper.CruiseOverViewMapper;
 import com.plomteux.ncconnector.mapper.SailingsMapper;
 import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.model.CruiseFacets;
 import com.plomteux.ncconnector.model.CruiseOverView;
+import com.plomteux.ncconnector.model.FacetCount;
+import com.plomteux.ncconnector.model.IngestJob;
+import com.plomteux.ncconnector.model.PriceDropAnalytics;
+import com.plomteux.ncconnector.model.PriceHistory;
 import com.plomteux.ncconnector.model.Sailings;
 import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.CruiseFacet;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingPriceStats;
 import com.plomteux.ncconnector.repository.SailingsRepository;
-import com.plomteux.ncconnector.service.NCService;
+import com.plomteux.ncconnector.service.CruiseCatalogService;
+import com.plomteux.ncconnector.service.CruiseSnapshotIndex;
+import com.plomteux.ncconnector.service.IngestJobService;
+import com.plomteux.ncconnector.service.PriceHistoryService;
 import jakarta.persistence.Tuple;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.constraints.Size;
 import java.math.BigDecimal;
+import java.net.URI;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @AllArgsConstructor
 @RestController
 @Slf4j
 public class NCControllerApiImpl implements NCControllerApi {
-    private final NCService nCService;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int DEFAULT_HISTORY_DAYS = 90;
+    private static final int DEFAULT_ANALYTICS_DAYS = 30;
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private final IngestJobService ingestJobService;
     private final CruiseDetailsRepository cruiseDetailsRepository;
-    private final CruiseDetailsMapper cruiseDetailsMapper;
     private final SailingsRepository sailingsRepository;
     private final SailingsMapper sailingsMapper;
     private final CruiseOverViewMapper cruiseOverViewMapper;
+    private final PriceDropRepository priceDropRepository;
+    private final CruiseSnapshotIndex cruiseSnapshotIndex;
+    private final CruiseCatalogService cruiseCatalogService;
+    private final PriceHistoryService priceHistoryService;
 
     @CrossOrigin
     @Override
-    public ResponseEntity<Void> getCruiseDetails() {
+    public ResponseEntity<IngestJob> getCruiseDetails() {
         log.debug("Received getCruiseDetails request");
-        nCService.getAllCruisesDetails();
-        return ResponseEntity.noContent().build();
+        IngestJob ingestJob = ingestJobService.submit(IngestJob.TriggerEnum.MANUAL);
+        return ResponseEntity.accepted()
+                .location(URI.create("/ingest-jobs/" + ingestJob.getJobId()))
+                .body(ingestJob);
+    }
+
+    @CrossOrigin
+    @Override
+    public ResponseEntity<IngestJob> getIngestJob(String jobId) {
+        log.debug("Received getIngestJob request for jobId: {}", jobId);
+        return ingestJobService.find(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @CrossOrigin
     @Override
     public ResponseEntity<List<String>> getDestinationCodes() {
         log.debug("Received getDestinationCodes request");
-        List<String> uniqueDestinationCodes = cruiseDetailsRepository.findUniqueDestinationCodes();
-        return ResponseEntity.ok(uniqueDestinationCodes);
+        return ResponseEntity.ok(cruiseCatalogService.getDestinationCodes());
     }
 
     @CrossOrigin
     @Override
     public ResponseEntity<List<CruiseDetails>> getCruisesByDestinationCode(@PathVariable String destinationCode) {
         log.debug("Received getCruisesByDestinationCode request");
-        List<CruiseDetailsEntity> cruises = cruiseDetailsRepository.findByDestinationCode(destinationCode);
-        return ResponseEntity.ok(cruises.stream().map(cruiseDetailsMapper::toCruiseDetails).toList());
+        return ResponseEntity.ok(cruiseCatalogService.getCruisesByDestinationCode(destinationCode));
     }
 
     @CrossOrigin
     @Override
     public ResponseEntity<List<Sailings>> getCruisePricesByCode(@PathVariable String code) {
         log.debug("Received getCruisePricesByCode request");
-        List<CruiseDetailsEntity> cruiseDetails = cruiseDetailsRepository.findByCode(code);
-        List<SailingsEntity> sailings = cruiseDetails.stream()
-                .map(CruiseDetailsEntity::getSailingsEntities)
-                .flatMap(List::stream)
-                .toList();
-        return ResponseEntity.ok(sailings.stream().map(sailingsMapper::toSailings).toList());
+        return ResponseEntity.ok(cruiseCatalogService.getCruisePricesByCode(code));
     }
 
     @CrossOrigin
@@ -77,9 +117,7 @@ public class NCControllerApiImpl implements NCControllerApi {
             @RequestParam("destinationCode") String destinationCode) {
         log.debug("Received getSailingsByDestinationAndDeparture request");
         List<SailingsEntity> sailings = sailingsRepository.findSailingsByDepartureDateAndDestinationCode(departureDate, destinationCode);
-        return ResponseEntity.ok(sailings.stream()
-                .map(cruiseOverViewMapper::toCruiseOverView)
-                .toList());
+        return ResponseEntity.ok(toCruiseOverViews(sailings));
     }
 
     @CrossOrigin
@@ -88,20 +126,40 @@ public class NCControllerApiImpl implements NCControllerApi {
             @RequestParam("sailId") BigDecimal sailId,
             @RequestParam("roomType") String roomType) {
         log.debug("Received getBestSailingByPriceAndType request");
-        SailingsEntity sailing = sailingsRepository.findSailingsWithLowestPriceRoomType(sailId, roomType);
+        SailingsEntity sailing = sailingsRepository.findSailingsWithLowestPriceRoomType(sailId, RoomType.from(roomType));
         return ResponseEntity.ok(sailingsMapper.toSailings(sailing));
     }
 
+    @CrossOrigin
+    @Override
+    public ResponseEntity<Map<String, Sailings>> getBestSailingsByPriceAndType(
+            @RequestParam("sailIds") List<BigDecimal> sailIds,
+            @RequestParam("roomType") String roomType) {
+        log.debug("Received getBestSailingsByPriceAndType request for {} sail ids", sailIds.size());
+        checkBatchSize(sailIds);
+        Map<BigDecimal, SailingsEntity> lowest = sailingsRepository.findSailingsWithLowestPriceRoomType(sailIds, RoomType.from(roomType));
+        Map<String, Sailings> bySailId = new LinkedHashMap<>();
+        sailIds.forEach(sailId -> {
+            SailingsEntity sailing = lowest.get(sailId.stripTrailingZeros());
+            if (sailing != null) {
+                bySailId.put(sailId.toPlainString(), sailingsMapper.toSailings(sailing));
+            }
+        });
+        return ResponseEntity.ok(bySailId);
+    }
+
     @CrossOrigin
     @Override
     public ResponseEntity<List<CruiseOverView>> getSailingsPriceDrops(
             @RequestParam("fromDate") LocalDate fromDate,
             @RequestParam("toDate") LocalDate toDate,
             @RequestParam("percentage") BigDecimal percentage,
-            @RequestParam("roomType") String roomType) {
+            @RequestParam("roomType") String roomType,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize,
+            @RequestParam(value = "pageToken", required = false) String pageToken) {
         LocalDate fromDateParsed = fromDate != null ? fromDate : LocalDate.now().minusDays(1);
         LocalDate toDateParsed = toDate != null ? toDate : LocalDate.now();
-        roomType = roomType != null ? roomType : "inside";
+        RoomType parsedRoomType = RoomType.from(roomType);
         if (fromDateParsed.isAfter(toDateParsed)) {
             throw new IllegalArgumentException("From date cannot be after to date");
         }
@@ -111,20 +169,50 @@ public class NCControllerApiImpl implements NCControllerApi {
 
         log.debug("Received getSailingsPriceDrops request");
 
-        List<Tuple> results = sailingsRepository.getSailingsPriceDrops(
-                fromDateParsed,
-                toDateParsed,
-                percentage,
-                roomType
-        );
+        PageToken after = PageToken.decode(pageToken);
+        Pageable page = pageOf(pageSize);
+        List<Tuple> results = fromDateParsed.plusDays(1).equals(toDateParsed) && priceDropRepository.existsByPublishedDate(toDateParsed)
+                ? priceDropRepository.findPriceDrops(toDateParsed, parsedRoomType, percentage, after.value(), after.id(), page)
+                : sailingsRepository.getSailingsPriceDrops(
+                        fromDateParsed,
+                        toDateParsed,
+                        percentage,
+                        parsedRoomType,
+                        after.value(),
+                        after.id(),
+                        page
+                );
 
-        return ResponseEntity.ok(results.stream()
+        return toCruiseOverViewPage(results.stream()
                 .map(result -> {
                     SailingsEntity s = result.get(0, SailingsEntity.class);
-                    s.setOldPrice(result.get(1, BigDecimal.class));
+                    s.setOldPrice(result.get(1, Long.class));
                     return s;
                 })
-                .map(cruiseOverViewMapper::toCruiseOverView)
+                .toList(), page, SailingsEntity::getOldPrice);
+    }
+
+    @CrossOrigin
+    @Override
+    public ResponseEntity<List<PriceDropAnalytics>> getPriceDropAnalytics(
+            @RequestParam(value = "fromDate", required = false) LocalDate fromDate,
+            @RequestParam(value = "toDate", required = false) LocalDate toDate,
+            @RequestParam(value = "roomType", required = false) String roomType,
+            @RequestParam(value = "destinationCode", required = false) String destinationCode,
+            @RequestParam(value = "departurePort", required = false) String departurePort,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize) {
+        log.debug("Received getPriceDropAnalytics request");
+        LocalDate toDateParsed = toDate != null ? toDate : LocalDate.now();
+        LocalDate fromDateParsed = fromDate != null ? fromDate : toDateParsed.minusDays(DEFAULT_ANALYTICS_DAYS);
+        if (fromDateParsed.isAfter(toDateParsed)) {
+            throw new IllegalArgumentException("From date cannot be after to date");
+        }
+        RoomType parsedRoomType = RoomType.from(roomType);
+        // capped at one page, without a next page token: the largest drops are what callers look for
+        List<SailingPriceStats> stats = sailingsRepository.getPriceDropAnalytics(fromDateParsed, toDateParsed, parsedRoomType,
+                destinationCode, departurePort, pageSizeOf(pageSize));
+        return ResponseEntity.ok(stats.stream()
+                .map(stat -> toPriceDropAnalytics(stat, parsedRoomType, toDateParsed))
                 .toList());
     }
 
@@ -134,7 +222,40 @@ public class NCControllerApiImpl implements NCControllerApi {
             @RequestParam("sailId") BigDecimal sailId) {
         log.debug("Received getSailingsPricesByCode request");
         List<SailingsEntity> sailings = sailingsRepository.getSailingsPricesBySailId(sailId);
-        return ResponseEntity.ok(sailings.stream().map(sailingsMapper::toSailings).toList());
+        return ResponseEntity.ok(sailings.stream().flatMap(this::toDailySailings).toList());
+    }
+
+    @CrossOrigin
+    @Override
+    public ResponseEntity<Map<String, List<Sailings>>> getSailingsPricesBySailIds(
+            @RequestParam("sailIds") List<BigDecimal> sailIds) {
+        log.debug("Received getSailingsPricesBySailIds request for {} sail ids", sailIds.size());
+        checkBatchSize(sailIds);
+        Map<BigDecimal, List<SailingsEntity>> sailings = sailingsRepository.getSailingsPricesBySailIds(sailIds).stream()
+                .collect(Collectors.groupingBy(sailing -> sailing.getSailId().stripTrailingZeros()));
+        Map<String, List<Sailings>> bySailId = new LinkedHashMap<>();
+        sailIds.forEach(sailId -> bySailId.put(sailId.toPlainString(),
+                sailings.getOrDefault(sailId.stripTrailingZeros(), List.of()).stream().flatMap(this::toDailySailings).toList()));
+        return ResponseEntity.ok(bySailId);
+    }
+
+    @CrossOrigin
+    @Override
+    public ResponseEntity<PriceHistory> getSailingPriceHistory(
+            @PathVariable("sailId") BigDecimal sailId,
+            @RequestParam(value = "bucket", required = false) String bucket,
+            @RequestParam(value = "fromDate", required = false) LocalDate fromDate,
+            @RequestParam(value = "toDate", required = false) LocalDate toDate,
+            @RequestParam(value = "roomType", required = false) String roomType) {
+        log.debug("Received getSailingPriceHistory request");
+        LocalDate toDateParsed = toDate != null ? toDate : LocalDate.now();
+        LocalDate fromDateParsed = fromDate != null ? fromDate : toDateParsed.minusDays(DEFAULT_HISTORY_DAYS);
+        if (fromDateParsed.isAfter(toDateParsed)) {
+            throw new IllegalArgumentException("From date cannot be after to date");
+        }
+        PriceHistory.BucketEnum parsedBucket = bucket != null ? PriceHistory.BucketEnum.fromValue(bucket) : PriceHistory.BucketEnum.WEEK;
+        RoomType parsedRoomType = roomType != null ? RoomType.from(roomType) : null;
+        return ResponseEntity.ok(priceHistoryService.getPriceHistory(sailId, parsedBucket, fromDateParsed, toDateParsed, parsedRoomType));
     }
 
     @CrossOrigin
@@ -147,7 +268,9 @@ public class NCControllerApiImpl implements NCControllerApi {
             @RequestParam("daysAtSeaMin") BigDecimal daysAtSeaMin,
             @RequestParam("daysAtSeaMax") BigDecimal daysAtSeaMax,
             @RequestParam("destinationCode") String destinationCode,
-            @RequestParam @Size(min = 3, max = 3, message = "Departure port must be exactly 3 characters long") String departurePort) {
+            @RequestParam @Size(min = 3, max = 3, message = "Departure port must be exactly 3 characters long") String departurePort,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize,
+            @RequestParam(value = "pageToken", required = false) String pageToken) {
         log.debug("Received findCruise request");
         if (departureDate.isAfter(returnDate)) {
             throw new IllegalArgumentException("Departure date cannot be after return date");
@@ -158,10 +281,152 @@ public class NCControllerApiImpl implements NCControllerApi {
         if (daysAtSeaMax.compareTo(daysAtSeaMin) < 0) {
             throw new IllegalArgumentException("Days at sea max cannot be less than days at sea min");
         }
-        List<SailingsEntity> sailings = sailingsRepository.findCruise(departureDate, returnDate, destinationCode, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, departurePort);
-        return ResponseEntity.ok(sailings.stream()
+        PageToken after = PageToken.decode(pageToken);
+        Pageable page = pageOf(pageSize);
+        Long priceUpToCents = Prices.toCents(priceUpTo);
+        Long priceFromCents = Prices.toCents(priceFrom);
+        Optional<List<CruiseSnapshotIndex.Hit>> hits = cruiseSnapshotIndex.findCruise(departureDate, returnDate, destinationCode, priceUpToCents, priceFromCents, daysAtSeaMin, daysAtSeaMax, departurePort,
+                after.value(), after.id(), page.getPageSize());
+        if (hits.isPresent()) {
+            return toPage(hits.get(), page, hit -> new PageToken(hit.inside(), hit.sailingId()),
+                    rows -> rows.stream().map(CruiseSnapshotIndex.Hit::cruiseOverView).toList());
+        }
+        List<SailingsEntity> sailings = sailingsRepository.findCruise(departureDate, returnDate, destinationCode, priceUpToCents, priceFromCents, daysAtSeaMin, daysAtSeaMax, departurePort,
+                after.value(), after.id(), page);
+        return toCruiseOverViewPage(sailings, page, SailingsEntity::getInside);
+    }
+
+    @CrossOrigin
+    @Override
+    public ResponseEntity<CruiseFacets> getCruiseFacets(
+            @RequestParam("departureDate") LocalDate departureDate,
+            @RequestParam("returnDate") LocalDate returnDate,
+            @RequestParam(value = "priceUpTo", required = false) BigDecimal priceUpTo,
+            @RequestParam(value = "priceFrom", required = false) BigDecimal priceFrom,
+            @RequestParam(value = "daysAtSeaMin", required = false) BigDecimal daysAtSeaMin,
+            @RequestParam(value = "daysAtSeaMax", required = false) BigDecimal daysAtSeaMax,
+            @RequestParam(value = "destinationCode", required = false) String destinationCode,
+            @RequestParam(value = "departurePort", required = false) String departurePort) {
+        log.debug("Received getCruiseFacets request");
+        if (departureDate.isAfter(returnDate)) {
+            throw new IllegalArgumentException("Departure date cannot be after return date");
+        }
+        if (priceUpTo != null && priceFrom != null && priceUpTo.compareTo(priceFrom) < 0) {
+            throw new IllegalArgumentException("Price up to cannot be less than price from");
+        }
+        if (daysAtSeaMax != null && daysAtSeaMin != null && daysAtSeaMax.compareTo(daysAtSeaMin) < 0) {
+            throw new IllegalArgumentException("Days at sea max cannot be less than days at sea min");
+        }
+        Long priceUpToCents = Prices.toCents(priceUpTo);
+        Long priceFromCents = Prices.toCents(priceFrom);
+        List<CruiseFacet> facets = cruiseSnapshotIndex.getCruiseFacets(departureDate, returnDate, destinationCode, priceUpToCents, priceFromCents, daysAtSeaMin, daysAtSeaMax, departurePort)
+                .orElseGet(() -> sailingsRepository.getCruiseFacets(departureDate, returnDate, destinationCode, priceUpToCents, priceFromCents, daysAtSeaMin, daysAtSeaMax, departurePort));
+        return ResponseEntity.ok(toCruiseFacets(facets));
+    }
+
+    private static void checkBatchSize(List<BigDecimal> sailIds) {
+        if (sailIds.isEmpty() || sailIds.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_BATCH_SIZE + " sail ids must be given");
+        }
+    }
+
+    private static int pageSizeOf(Integer pageSize) {
+        int size = pageSize != null ? pageSize : DEFAULT_PAGE_SIZE;
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    // one row more than the page holds tells whether a next page exists, without counting
+    private static Pageable pageOf(Integer pageSize) {
+        return PageRequest.of(0, pageSizeOf(pageSize) + 1);
+    }
+
+    private ResponseEntity<List<CruiseOverView>> toCruiseOverViewPage(List<SailingsEntity> rows, Pageable page,
+                                                                       Function<SailingsEntity, Long> sortValue) {
+        return toPage(rows, page, last -> new PageToken(sortValue.apply(last), last.getId()), this::toCruiseOverViews);
+    }
+
+    private static <T> ResponseEntity<List<CruiseOverView>> toPage(List<T> rows, Pageable page, Function<T, PageToken> position,
+                                                                   Function<List<T>, List<CruiseOverView>> mapper) {
+        int size = page.getPageSize() - 1;
+        if (rows.size() <= size) {
+            return ResponseEntity.ok(mapper.apply(rows));
+        }
+        List<T> pageRows = rows.subList(0, size);
+        return ResponseEntity.ok()
+                .header(PageToken.HEADER, position.apply(pageRows.get(size - 1)).encode())
+                .body(mapper.apply(pageRows));
+    }
+
+    // destinations and ports of call of all cruises are loaded in two queries instead of lazily per sailing
+    private List<CruiseOverView> toCruiseOverViews(List<SailingsEntity> sailings) {
+        Set<Long> cruiseIds = sailings.stream()
+                .map(SailingsEntity::getCruiseDetailsEntity)
+                .filter(Objects::nonNull)
+                .map(CruiseDetailsEntity::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (!cruiseIds.isEmpty()) {
+            cruiseDetailsRepository.fetchDestinations(cruiseIds);
+            cruiseDetailsRepository.fetchPortsOfCall(cruiseIds);
+        }
+        return sailings.stream()
                 .map(cruiseOverViewMapper::toCruiseOverView)
-                .toList());
+                .toList();
+    }
+
+    // destinations and ports with the most sailings first, durations and room types in their own order
+    private static CruiseFacets toCruiseFacets(List<CruiseFacet> facets) {
+        Map<CruiseFacet.Facet, List<CruiseFacet>> byFacet = facets.stream()
+                .collect(Collectors.groupingBy(CruiseFacet::facet));
+        Comparator<CruiseFacet> mostFirst = Comparator.comparingLong(CruiseFacet::count).reversed()
+                .thenComparing(CruiseFacet::value);
+        Map<String, Integer> durationOrder = Arrays.stream(DurationBucket.values())
+                .collect(Collectors.toMap(DurationBucket::getLabel, DurationBucket::ordinal));
+        Function<CruiseFacet.Facet, Stream<CruiseFacet>> rows = facet -> byFacet.getOrDefault(facet, List.of()).stream();
+        return new CruiseFacets()
+                .total(rows.apply(CruiseFacet.Facet.TOTAL).findFirst().map(NCControllerApiImpl::toFacetCount).orElse(null))
+                .destinationCodes(rows.apply(CruiseFacet.Facet.DESTINATION).sorted(mostFirst)
+                        .map(NCControllerApiImpl::toFacetCount).toList())
+                .departurePorts(rows.apply(CruiseFacet.Facet.DEPARTURE_PORT).sorted(mostFirst)
+                        .map(NCControllerApiImpl::toFacetCount).toList())
+                .durations(rows.apply(CruiseFacet.Facet.DURATION).sorted(Comparator.comparing(row -> durationOrder.get(row.value())))
+                        .map(NCControllerApiImpl::toFacetCount).toList())
+                .roomTypes(rows.apply(CruiseFacet.Facet.ROOM_TYPE).sorted(Comparator.comparing(row -> RoomType.valueOf(row.value())))
+                        .map(NCControllerApiImpl::toFacetCount).toList());
+    }
+
+    private static FacetCount toFacetCount(CruiseFacet facet) {
+        return new FacetCount()
+                .value(facet.value())
+                .count(facet.count())
+                .minPrice(Prices.toDecimal(facet.minPrice()));
     }
 
+    private static PriceDropAnalytics toPriceDropAnalytics(SailingPriceStats stats, RoomType roomType, LocalDate to) {
+        return new PriceDropAnalytics()
+                .sailId(stats.sailId())
+                .bundleType(stats.bundleType())
+                .packageId(stats.packageId())
+                .code(stats.code())
+                .departureDate(stats.departureDate())
+                .roomType(roomType.name())
+                .currentPrice(Prices.toDecimal(stats.currentPrice()))
+                .minPrice(Prices.toDecimal(stats.minPrice()))
+                .largestDrop(Prices.toDecimal(stats.largestDrop()))
+                .lowDate(stats.lowDate())
+                .daysSinceLow(stats.lowDate() != null ? (int) ChronoUnit.DAYS.between(stats.lowDate(), to) : null);
+    }
+
+    private Stream<Sailings> toDailySailings(SailingsEntity sailing) {
+        LocalDate from = sailing.getPublishedDate();
+        if (from == null || sailing.getValidTo() == null) {
+            return Stream.of(sailingsMapper.toSailings(sailing));
+        }
+        LocalDate to = sailing.getValidTo().isAfter(LocalDate.now()) ? LocalDate.now() : sailing.getValidTo();
+        return from.datesUntil(to.plusDays(1))
+                .map(day -> sailingsMapper.toSailings(sailing).publishedDate(day));
+    }
 }
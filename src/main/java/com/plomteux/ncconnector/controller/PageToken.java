@@ -0,0 +1,29 @@
+package com.plomteux.ncconnector.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/** Sort value and id of the last row of a page, handed to clients as an opaque string; a null value sorts last. */
+record PageToken(Long value, Long id) {
+    static final String HEADER = "X-Next-Page-Token";
+    private static final String SEPARATOR = "|";
+
+    String encode() {
+        String token = (value != null ? value.toString() : "") + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageToken decode(String token) {
+        if (token == null || token.isBlank()) {
+            return new PageToken(null, null);
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            String value = decoded.substring(0, separator);
+            return new PageToken(value.isEmpty() ? null : Long.valueOf(value), Long.valueOf(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+    }
+}
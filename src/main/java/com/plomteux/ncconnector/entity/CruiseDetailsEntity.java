@@ -8,11 +8,13 @@ import java.math.BigDecimal;
 import java.util.List;
 
 @Entity
+@Table(indexes = @Index(name = "idx_cruise_details_code", columnList = "code", unique = true))
 @Setter
 @Getter
 public class CruiseDetailsEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cruiseDetailsSequence")
+    @SequenceGenerator(name = "cruiseDetailsSequence", sequenceName = "cruise_details_entity_seq", allocationSize = 50)
     private Long id;
     private String bundleType;
     private String code;
@@ -25,9 +27,21 @@ public class CruiseDetailsEntity {
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "cruiseDetailsEntity")
     private List<SailingsEntity> sailingsEntities;
 
-    @OneToMany(cascade = CascadeType.ALL, mappedBy = "cruiseDetailsEntity")
+    // dictionary rows, which must already be persisted when the cruise is saved
+    @ManyToMany
+    @JoinTable(name = "cruise_destination",
+            joinColumns = @JoinColumn(name = "cruiseDetailsEntity_id"),
+            inverseJoinColumns = @JoinColumn(name = "destinationCodeEntity_id"),
+            indexes = {
+                    @Index(name = "idx_cruise_destination_cruise", columnList = "cruiseDetailsEntity_id"),
+                    @Index(name = "idx_cruise_destination_destination", columnList = "destinationCodeEntity_id")
+            })
     private List<DestinationCodeEntity> destinationsEntities;
 
-    @OneToMany(cascade = CascadeType.ALL, mappedBy = "cruiseDetailsEntity")
+    @ManyToMany
+    @JoinTable(name = "cruise_port_of_call",
+            joinColumns = @JoinColumn(name = "cruiseDetailsEntity_id"),
+            inverseJoinColumns = @JoinColumn(name = "portsOfCallEntity_id"),
+            indexes = @Index(name = "idx_cruise_port_of_call_cruise", columnList = "cruiseDetailsEntity_id"))
     private List<PortsOfCallEntity> portsOfCallEntities;
 }
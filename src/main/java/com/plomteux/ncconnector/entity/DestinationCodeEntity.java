@@ -5,15 +5,13 @@ import lombok.Getter;
 import lombok.Setter;
 
 @Entity
+@Table(indexes = @Index(name = "idx_destination_code", columnList = "destinationCode", unique = true))
 @Setter
 @Getter
 public class DestinationCodeEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "destinationCodeSequence")
+    @SequenceGenerator(name = "destinationCodeSequence", sequenceName = "destination_code_entity_seq", allocationSize = 50)
     private Long id;
     private String destinationCode;
-
-    @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "cruiseDetailsEntity_id")
-    private CruiseDetailsEntity cruiseDetailsEntity;
-}
\ No newline at end of file
+}
@@ -0,0 +1,34 @@
+package com.plomteux.ncconnector.entity;
+
+/** Ranges of cruise durations in days, each one up to and including maxDays. */
+public enum DurationBucket {
+    SHORT("1-5", 5),
+    WEEK("6-9", 9),
+    LONG("10-14", 14),
+    EXTENDED("15+", Integer.MAX_VALUE);
+
+    private final String label;
+    private final int maxDays;
+
+    DurationBucket(String label, int maxDays) {
+        this.label = label;
+        this.maxDays = maxDays;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getMaxDays() {
+        return maxDays;
+    }
+
+    public static DurationBucket of(double days) {
+        for (DurationBucket bucket : values()) {
+            if (days <= bucket.maxDays) {
+                return bucket;
+            }
+        }
+        return EXTENDED;
+    }
+}
@@ -5,15 +5,13 @@ import lombok.Getter;
 import lombok.Setter;
 
 @Entity
+@Table(indexes = @Index(name = "idx_ports_of_call", columnList = "portsOfCall", unique = true))
 @Setter
 @Getter
 public class PortsOfCallEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "portsOfCallSequence")
+    @SequenceGenerator(name = "portsOfCallSequence", sequenceName = "ports_of_call_entity_seq", allocationSize = 50)
     private Long id;
     private String portsOfCall;
-
-    @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "cruiseDetailsEntity_id")
-    private CruiseDetailsEntity cruiseDetailsEntity;
 }
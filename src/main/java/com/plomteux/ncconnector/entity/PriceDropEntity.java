@@ -0,0 +1,31 @@
+package com.plomteux.ncconnector.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Entity
+@Table(indexes = @Index(name = "idx_price_drop_day_room", columnList = "publishedDate, roomType, priceDifference"))
+@Setter
+@Getter
+public class PriceDropEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "priceDropSequence")
+    @SequenceGenerator(name = "priceDropSequence", sequenceName = "price_drop_entity_seq", allocationSize = 50)
+    private Long id;
+    private BigDecimal sailId;
+    @Enumerated(EnumType.STRING)
+    private RoomType roomType;
+    private LocalDate publishedDate;
+    private Long oldPrice;
+    private Long newPrice;
+    private Long priceDifference;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    // no foreign key: partitioned sailings can only be referenced together with their partition key
+    @JoinColumn(name = "sailingsEntity_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    private SailingsEntity sailingsEntity;
+}
@@ -0,0 +1,28 @@
+package com.plomteux.ncconnector.entity;
+
+import org.mapstruct.Named;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/** Prices are whole cents; decimals only where amounts enter from upstream or leave through our API. */
+public final class Prices {
+    private static final int SCALE = 2;
+
+    private Prices() {
+    }
+
+    public static Long toCents(BigDecimal amount) {
+        return amount != null ? cents(amount) : null;
+    }
+
+    // named so that mappers only use it when asked to
+    @Named("cents")
+    public static long cents(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDecimal(Long cents) {
+        return cents != null ? BigDecimal.valueOf(cents, SCALE) : null;
+    }
+}
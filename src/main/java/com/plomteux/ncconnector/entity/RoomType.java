@@ -0,0 +1,43 @@
+package com.plomteux.ncconnector.entity;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+public enum RoomType {
+    STUDIO("studio", SailingsEntity::getStudio),
+    INSIDE("inside", SailingsEntity::getInside),
+    OCEAN_VIEW("oceanView", SailingsEntity::getOceanView),
+    BALCONY("balcony", SailingsEntity::getBalcony),
+    MINI_SUITE("miniSuite", SailingsEntity::getMiniSuite),
+    SUITE("suite", SailingsEntity::getSuite),
+    HAVEN("haven", SailingsEntity::getHaven),
+    SPA("spa", SailingsEntity::getSpa);
+
+    private final String attribute;
+    private final Function<SailingsEntity, Long> price;
+
+    RoomType(String attribute, Function<SailingsEntity, Long> price) {
+        this.attribute = attribute;
+        this.price = price;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public Long price(SailingsEntity sailingsEntity) {
+        return price.apply(sailingsEntity);
+    }
+
+    // attribute name (oceanView), enum name (OCEAN_VIEW) or upstream code (OCEANVIEW), in any case; anything else is inside
+    public static RoomType from(String value) {
+        if (value == null) {
+            return INSIDE;
+        }
+        String normalized = value.replace("_", "");
+        return Arrays.stream(values())
+                .filter(roomType -> roomType.attribute.equalsIgnoreCase(normalized))
+                .findFirst()
+                .orElse(INSIDE);
+    }
+}
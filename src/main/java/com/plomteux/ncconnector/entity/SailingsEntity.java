@@ -3,7 +3,6 @@ package com.plomteux.ncconnector.entity;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
-import org.springframework.cglib.core.Local;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -11,11 +10,26 @@ import java.time.format.DateTimeFormatter;
 import java.util.Date;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_sailings_valid_to", columnList = "validTo"),
+        @Index(name = "idx_sailings_sailing_key", columnList = "sailId, bundleType, packageId, publishedDate"),
+        @Index(name = "idx_sailings_sail_studio", columnList = "sailId, studio"),
+        @Index(name = "idx_sailings_sail_inside", columnList = "sailId, inside"),
+        @Index(name = "idx_sailings_sail_ocean_view", columnList = "sailId, oceanView"),
+        @Index(name = "idx_sailings_sail_balcony", columnList = "sailId, balcony"),
+        @Index(name = "idx_sailings_sail_mini_suite", columnList = "sailId, miniSuite"),
+        @Index(name = "idx_sailings_sail_suite", columnList = "sailId, suite"),
+        @Index(name = "idx_sailings_sail_haven", columnList = "sailId, haven"),
+        @Index(name = "idx_sailings_sail_spa", columnList = "sailId, spa")
+})
 @Setter
 @Getter
 public class SailingsEntity {
+    public static final LocalDate OPEN_END = LocalDate.of(9999, 12, 31);
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sailingsSequence")
+    @SequenceGenerator(name = "sailingsSequence", sequenceName = "sailings_entity_seq", allocationSize = 50)
     private Long id;
     private BigDecimal sailId;
     private String bundleType;
@@ -23,15 +37,18 @@ public class SailingsEntity {
     private LocalDate departureDate;
     private LocalDate returnDate;
     private LocalDate publishedDate;
-    private BigDecimal studio;
-    private BigDecimal inside;
-    private BigDecimal oceanView;
-    private BigDecimal balcony;
-    private BigDecimal miniSuite;
-    private BigDecimal suite;
-    private BigDecimal haven;
-    private BigDecimal spa;
-    private BigDecimal oldPrice;
+    // inclusive; equal to publishedDate for a one-day row
+    private LocalDate validTo;
+    // prices in cents
+    private Long studio;
+    private Long inside;
+    private Long oceanView;
+    private Long balcony;
+    private Long miniSuite;
+    private Long suite;
+    private Long haven;
+    private Long spa;
+    private Long oldPrice;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "cruiseDetailsEntity_id")
@@ -40,5 +57,8 @@ public class SailingsEntity {
     @PrePersist
     public void prePersist() {
         this.publishedDate = LocalDate.now();
+        if (this.validTo == null) {
+            this.validTo = this.publishedDate;
+        }
     }
 }
@@ -0,0 +1,32 @@
+package com.plomteux.ncconnector.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/** Weekly prices of a sailing and room type, left behind when its daily rows are compacted away. */
+@Entity
+@Table(indexes = @Index(name = "idx_sailings_rollup_key", columnList = "sailId, bundleType, packageId, roomType, weekStart", unique = true))
+@Setter
+@Getter
+public class SailingsRollupEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sailingsRollupSequence")
+    @SequenceGenerator(name = "sailingsRollupSequence", sequenceName = "sailings_rollup_entity_seq", allocationSize = 50)
+    private Long id;
+    private BigDecimal sailId;
+    private String bundleType;
+    private BigDecimal packageId;
+    @Enumerated(EnumType.STRING)
+    private RoomType roomType;
+    // a Monday
+    private LocalDate weekStart;
+    // lastPrice was the price on lastDate, the last day of the week with a price
+    private Long minPrice;
+    private Long maxPrice;
+    private Long lastPrice;
+    private LocalDate lastDate;
+}
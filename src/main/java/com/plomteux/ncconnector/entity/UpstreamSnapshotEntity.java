@@ -0,0 +1,26 @@
+package com.plomteux.ncconnector.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+@Entity
+@Table(indexes = @Index(name = "idx_upstream_snapshot_published_date", columnList = "publishedDate"))
+@Setter
+@Getter
+public class UpstreamSnapshotEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "upstreamSnapshotSequence")
+    @SequenceGenerator(name = "upstreamSnapshotSequence", sequenceName = "upstream_snapshot_entity_seq", allocationSize = 50)
+    private Long id;
+    private LocalDate publishedDate;
+    private String etag;
+    private String lastModified;
+    @Column(length = 64)
+    private String itinerariesHash;
+    @Column(length = 64)
+    private String pricesHash;
+    private Boolean carriedForward;
+}
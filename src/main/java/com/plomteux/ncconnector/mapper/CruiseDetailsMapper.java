@@ -23,6 +23,7 @@ public interface CruiseDetailsMapper {
 
     List<SailingsEntity> toSailingsEntities(List<Sailings> sailingsList);
 
+    // unsaved rows holding only their code, swapped for the dictionary rows before the cruise is saved
     @AfterMapping
     default void addedMapping(CruiseDetails cruiseDetails, @MappingTarget CruiseDetailsEntity cruiseDetailsEntity) {
         cruiseDetailsEntity.setDestinationsEntities(
@@ -34,8 +35,6 @@ public interface CruiseDetailsMapper {
                         .map(PortsOfCallMapper.INSTANCE::toPortsOfCallEntity)
                         .toList());
         cruiseDetailsEntity.setEmbarkationPortCode(cruiseDetails.getEmbarkationPort().getCode());
-        cruiseDetailsEntity.getDestinationsEntities().forEach(destinationCodeEntity -> destinationCodeEntity.setCruiseDetailsEntity(cruiseDetailsEntity));
-        cruiseDetailsEntity.getPortsOfCallEntities().forEach(portsOfCallEntity -> portsOfCallEntity.setCruiseDetailsEntity(cruiseDetailsEntity));
         cruiseDetailsEntity.getSailingsEntities().forEach(sailingsEntity -> sailingsEntity.setCruiseDetailsEntity(cruiseDetailsEntity));
     }
     @AfterMapping
@@ -3,6 +3,7 @@ package com.plomteux.ncconnector.mapper;
 import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
 import com.plomteux.ncconnector.entity.DestinationCodeEntity;
 import com.plomteux.ncconnector.entity.PortsOfCallEntity;
+import com.plomteux.ncconnector.entity.Prices;
 import com.plomteux.ncconnector.entity.SailingsEntity;
 import com.plomteux.ncconnector.model.CruiseOverView;
 import org.mapstruct.AfterMapping;
@@ -10,7 +11,7 @@ import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
 
-@Mapper(componentModel = "spring", uses = {SailingsMapper.class, CruiseDetailsMapper.class, CruiseOverViewMapper.class})
+@Mapper(componentModel = "spring", uses = {Prices.class, SailingsMapper.class, CruiseDetailsMapper.class, CruiseOverViewMapper.class})
 public interface CruiseOverViewMapper {
 
     @Mapping(target = "duration", source = "sailingsEntity.cruiseDetailsEntity.duration")
@@ -1,7 +1,9 @@
 package com.plomteux.ncconnector.mapper;
 
+import com.plomteux.ncconnector.entity.Prices;
 import com.plomteux.ncconnector.entity.SailingsEntity;
 import com.plomteux.ncconnector.model.Sailings;
+import io.micrometer.core.instrument.Metrics;
 import org.mapstruct.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +15,7 @@ import java.util.Date;
 import java.util.Objects;
 
 @Component
-@Mapper(componentModel = "spring")
+@Mapper(componentModel = "spring", uses = Prices.class)
 public interface SailingsMapper {
     Logger log = LoggerFactory.getLogger(SailingsMapper.class);
 
@@ -37,15 +39,18 @@ public interface SailingsMapper {
                 .filter(pricingEntity -> pricingEntity.getCode() != null)
                 .forEach(pricingEntity -> {
                     switch (pricingEntity.getCode()) {
-                        case "STUDIO" -> sailingsEntity.setStudio(pricingEntity.getTotalPrice());
-                        case "INSIDE" -> sailingsEntity.setInside(pricingEntity.getTotalPrice());
-                        case "OCEANVIEW" -> sailingsEntity.setOceanView(pricingEntity.getTotalPrice());
-                        case "BALCONY" -> sailingsEntity.setBalcony(pricingEntity.getTotalPrice());
-                        case "MINISUITE" -> sailingsEntity.setMiniSuite(pricingEntity.getTotalPrice());
-                        case "SUITE" -> sailingsEntity.setSuite(pricingEntity.getTotalPrice());
-                        case "HAVEN" -> sailingsEntity.setHaven(pricingEntity.getTotalPrice());
-                        case "SPA" -> sailingsEntity.setSpa(pricingEntity.getTotalPrice());
-                        default -> log.error("Unknown pricing entity code: {}", pricingEntity.getCode());
+                        case "STUDIO" -> sailingsEntity.setStudio(Prices.toCents(pricingEntity.getTotalPrice()));
+                        case "INSIDE" -> sailingsEntity.setInside(Prices.toCents(pricingEntity.getTotalPrice()));
+                        case "OCEANVIEW" -> sailingsEntity.setOceanView(Prices.toCents(pricingEntity.getTotalPrice()));
+                        case "BALCONY" -> sailingsEntity.setBalcony(Prices.toCents(pricingEntity.getTotalPrice()));
+                        case "MINISUITE" -> sailingsEntity.setMiniSuite(Prices.toCents(pricingEntity.getTotalPrice()));
+                        case "SUITE" -> sailingsEntity.setSuite(Prices.toCents(pricingEntity.getTotalPrice()));
+                        case "HAVEN" -> sailingsEntity.setHaven(Prices.toCents(pricingEntity.getTotalPrice()));
+                        case "SPA" -> sailingsEntity.setSpa(Prices.toCents(pricingEntity.getTotalPrice()));
+                        default -> {
+                            log.error("Unknown pricing entity code: {}", pricingEntity.getCode());
+                            Metrics.counter("ncl.ingest.pricing.unknown", "code", pricingEntity.getCode()).increment();
+                        }
                     }
                 });
     }
@@ -7,17 +7,28 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface CruiseDetailsRepository extends JpaRepository<CruiseDetailsEntity, Long> {
-    @Query("SELECT DISTINCT d.destinationCode FROM CruiseDetailsEntity c JOIN c.destinationsEntities d")
+    @Query("SELECT d.destinationCode FROM DestinationCodeEntity d")
     List<String> findUniqueDestinationCodes();
 
     @Query("SELECT c FROM CruiseDetailsEntity c JOIN c.destinationsEntities d WHERE d.destinationCode = :destinationCode")
     List<CruiseDetailsEntity> findByDestinationCode(@Param("destinationCode") String destinationCode);
 
     @Query("SELECT cd FROM CruiseDetailsEntity cd WHERE cd.code = :code")
-    List<CruiseDetailsEntity> findByCode(@Param("code") String code);
+    Optional<CruiseDetailsEntity> findByCode(@Param("code") String code);
+
+    List<CruiseDetailsEntity> findByCodeIn(Collection<String> codes);
+
+    // both collections are bags, so they are fetched in separate queries rather than joined together
+    @Query("SELECT DISTINCT cd FROM CruiseDetailsEntity cd LEFT JOIN FETCH cd.destinationsEntities WHERE cd.id IN :ids")
+    List<CruiseDetailsEntity> fetchDestinations(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT DISTINCT cd FROM CruiseDetailsEntity cd LEFT JOIN FETCH cd.portsOfCallEntities WHERE cd.id IN :ids")
+    List<CruiseDetailsEntity> fetchPortsOfCall(@Param("ids") Collection<Long> ids);
 
 }
@@ -0,0 +1,8 @@
+package com.plomteux.ncconnector.repository;
+
+/** Sailings sharing a facet value; ROOM_TYPE rows are priced in that room type, the others on the inside cabin. */
+public record CruiseFacet(Facet facet, String value, long count, Long minPrice) {
+    public enum Facet {
+        TOTAL, DESTINATION, DEPARTURE_PORT, DURATION, ROOM_TYPE
+    }
+}
@@ -4,6 +4,10 @@ import com.plomteux.ncconnector.entity.DestinationCodeEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface DestinationRepository extends JpaRepository<DestinationCodeEntity, Long> {
-}
\ No newline at end of file
+    List<DestinationCodeEntity> findByDestinationCodeIn(Collection<String> destinationCodes);
+}
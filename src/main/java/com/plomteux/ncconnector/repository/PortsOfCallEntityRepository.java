@@ -4,6 +4,10 @@ import com.plomteux.ncconnector.entity.PortsOfCallEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface PortsOfCallEntityRepository extends JpaRepository<PortsOfCallEntity, Long> {
-}
\ No newline at end of file
+    List<PortsOfCallEntity> findByPortsOfCallIn(Collection<String> portsOfCall);
+}
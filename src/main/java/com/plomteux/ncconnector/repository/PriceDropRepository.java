@@ -0,0 +1,59 @@
+package com.plomteux.ncconnector.repository;
+
+import com.plomteux.ncconnector.entity.PriceDropEntity;
+import com.plomteux.ncconnector.entity.RoomType;
+import jakarta.persistence.Tuple;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PriceDropRepository extends JpaRepository<PriceDropEntity, Long> {
+    boolean existsByPublishedDate(LocalDate publishedDate);
+
+    @Query("SELECT se, pd.priceDifference FROM PriceDropEntity pd " +
+            "JOIN pd.sailingsEntity se " +
+            "LEFT JOIN FETCH se.cruiseDetailsEntity " +
+            "WHERE pd.publishedDate = :to " +
+            "AND pd.roomType = :roomType " +
+            "AND pd.newPrice < pd.oldPrice AND pd.newPrice <= pd.oldPrice * (1 - COALESCE(CAST(:percentage AS BigDecimal), 0)) " +
+            "AND (:afterId IS NULL OR pd.priceDifference < :afterDifference " +
+            "     OR (pd.priceDifference = :afterDifference AND se.id > :afterId)) " +
+            "ORDER BY pd.priceDifference DESC, se.id ASC")
+    List<Tuple> findPriceDrops(@Param("to") LocalDate to,
+                               @Param("roomType") RoomType roomType,
+                               @Param("percentage") BigDecimal percentage,
+                               @Param("afterDifference") Long afterDifference,
+                               @Param("afterId") Long afterId,
+                               Pageable page);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PriceDropEntity pd WHERE pd.publishedDate = :publishedDate")
+    int deleteByPublishedDate(@Param("publishedDate") LocalDate publishedDate);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PriceDropEntity pd WHERE pd.publishedDate = :publishedDate AND pd.sailId IN :sailIds")
+    int deleteByPublishedDateAndSailIds(@Param("publishedDate") LocalDate publishedDate, @Param("sailIds") Collection<BigDecimal> sailIds);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PriceDropEntity pd WHERE pd.sailingsEntity.id IN " +
+            "(SELECT se.id FROM SailingsEntity se WHERE se.id IN :ids AND se.publishedDate = :day)")
+    int deleteBySailingsPublishedOn(@Param("ids") List<Long> ids, @Param("day") LocalDate day);
+
+    @Modifying
+    @Query("DELETE FROM PriceDropEntity pd WHERE pd.sailingsEntity.id IN " +
+            "(SELECT se.id FROM SailingsEntity se WHERE se.validTo >= :from AND se.validTo < :to)")
+    int deleteBySailingsValidUntil(@Param("from") LocalDate from, @Param("to") LocalDate to);
+}
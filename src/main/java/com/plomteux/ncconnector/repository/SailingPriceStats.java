@@ -0,0 +1,9 @@
+package com.plomteux.ncconnector.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record SailingPriceStats(BigDecimal sailId, String bundleType, BigDecimal packageId, String code,
+                                LocalDate departureDate, long currentPrice, long minPrice, Long largestDrop,
+                                LocalDate lowDate) {
+}
@@ -0,0 +1,92 @@
+package com.plomteux.ncconnector.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/** Monthly partitions of sailings_entity on published_date, which no write ever changes; no-ops unless partitioned. */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SailingsPartitions {
+    public static final String TABLE = "sailings_entity";
+    public static final String DEFAULT_PARTITION = TABLE + "_default";
+    // so that rows never land in the default partition
+    public static final int MONTHS_AHEAD = 2;
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public boolean isPartitioned() {
+        boolean postgreSql = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                connection.isWrapperFor(PGConnection.class)));
+        if (!postgreSql) {
+            return false;
+        }
+        Integer partitioned = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_partitioned_table p JOIN pg_class c ON c.oid = p.partrelid WHERE c.relname = ?",
+                Integer.class, TABLE);
+        return partitioned != null && partitioned > 0;
+    }
+
+    public void createDefault() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + DEFAULT_PARTITION + " PARTITION OF " + TABLE + " DEFAULT");
+    }
+
+    public void createMonths(LocalDate from, LocalDate to) {
+        for (LocalDate month = from.withDayOfMonth(1); !month.isAfter(to); month = month.plusMonths(1)) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF " + TABLE
+                    + " FOR VALUES FROM ('" + month + "') TO ('" + month.plusMonths(1) + "')");
+        }
+    }
+
+    public void ensureMonthsAhead(LocalDate today) {
+        if (!isPartitioned()) {
+            return;
+        }
+        try {
+            createMonths(today, today.plusMonths(MONTHS_AHEAD));
+        } catch (DataAccessException e) {
+            // the default partition already holds rows of a missing month; they stay there until compacted
+            log.warn("Could not create the sailings partitions up to {}: {}", today.plusMonths(MONTHS_AHEAD), e.getMessage());
+        }
+    }
+
+    // a month published before the cutoff empties once compaction has deleted its last expired row
+    public int dropEmptyMonthsBefore(LocalDate day) {
+        if (!isPartitioned()) {
+            return 0;
+        }
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent "
+                        + "WHERE p.relname = ? AND c.relname LIKE ? ORDER BY c.relname",
+                String.class, TABLE, TABLE + "\\_p%");
+        String first = partitionName(day.withDayOfMonth(1));
+        int dropped = 0;
+        for (String partition : partitions) {
+            if (partition.compareTo(first) < 0
+                    && !Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + partition + ")", Boolean.class))) {
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    public long defaultPartitionRows() {
+        Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM " + DEFAULT_PARTITION, Long.class);
+        return rows != null ? rows : 0;
+    }
+
+    static String partitionName(LocalDate month) {
+        return TABLE + "_p" + month.format(SUFFIX);
+    }
+}
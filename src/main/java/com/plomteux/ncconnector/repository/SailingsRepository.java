@@ -2,21 +2,34 @@ package com.plomteux.ncconnector.repository;
 
 import com.plomteux.ncconnector.entity.SailingsEntity;
 import jakarta.persistence.Tuple;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.xml.crypto.Data;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
 @Repository
-public interface SailingsRepository extends JpaRepository<SailingsEntity, Long> {
+public interface SailingsRepository extends JpaRepository<SailingsEntity, Long>, SailingsRepositoryCustom {
+    // prices in RoomType order
+    String SAILING_PRICES = "SELECT se.id, se.sailId, se.bundleType, se.packageId, se.studio, se.inside, se.oceanView, " +
+            "se.balcony, se.miniSuite, se.suite, se.haven, se.spa " +
+            "FROM SailingsEntity se ";
+    // SAILING_PRICES followed by publishedDate and validTo
+    String SAILING_HISTORY = "SELECT se.id, se.sailId, se.bundleType, se.packageId, se.studio, se.inside, se.oceanView, " +
+            "se.balcony, se.miniSuite, se.suite, se.haven, se.spa, se.publishedDate, se.validTo " +
+            "FROM SailingsEntity se ";
+
     @Query("SELECT se FROM SailingsEntity se " +
-            "JOIN se.cruiseDetailsEntity cd " +
+            "JOIN FETCH se.cruiseDetailsEntity cd " +
             "JOIN cd.destinationsEntities de " +
             "WHERE se.departureDate = :departureDate " +
             "AND de.destinationCode = :destinationCode")
@@ -24,88 +37,100 @@ public interface SailingsRepository extends JpaRepository<SailingsEntity, Long>
             @Param("departureDate") LocalDate departureDate,
             @Param("destinationCode") String destinationCode);
 
-    @Query("SELECT se FROM SailingsEntity se " +
-            "WHERE se.sailId = :sailId " +
-            "ORDER BY " +
-            "CASE WHEN :roomType = 'inside' THEN se.inside " +
-            "     WHEN :roomType = 'oceanView' THEN se.oceanView " +
-            "     WHEN :roomType = 'miniSuite' THEN se.oceanView " +
-            "     WHEN :roomType = 'studio' THEN se.oceanView " +
-            "     WHEN :roomType = 'suite' THEN se.oceanView " +
-            "     WHEN :roomType = 'haven' THEN se.oceanView " +
-            "     WHEN :roomType = 'spa' THEN se.oceanView " +
-            "     ELSE se.inside END ASC " +
-            "LIMIT 1")
-    SailingsEntity findSailingsWithLowestPriceRoomType(
-            @Param("sailId") BigDecimal sailId,
-            @Param("roomType") String roomType);
-
-    @Query("SELECT s2, " +
-            "CASE " +
-            "   WHEN :roomType = 'inside' THEN s.inside - s2.inside " +
-            "   WHEN :roomType = 'studio' THEN s.studio - s2.studio " +
-            "   WHEN :roomType = 'oceanView' THEN s.oceanView - s2.oceanView " +
-            "   WHEN :roomType = 'miniSuite' THEN s.miniSuite - s2.miniSuite " +
-            "   WHEN :roomType = 'suite' THEN s.suite - s2.suite " +
-            "   WHEN :roomType = 'spa' THEN s.spa - s2.spa " +
-            "   WHEN :roomType = 'haven' THEN s.haven - s2.haven " +
-            "   ELSE s.inside - s2.inside " +
-            "END AS priceDifference " +
-            "FROM SailingsEntity s " +
-            "INNER JOIN SailingsEntity s2 ON s.sailId = s2.sailId " +
-            "WHERE s.publishedDate = :from " +
-            "AND s.bundleType = s2.bundleType " +
-            "AND s.packageId = s2.packageId " +
-            "AND ((:roomType = 'inside' AND s.inside > s2.inside * (1 - COALESCE(:percentage, 0)))" +
-            "   OR (:roomType = 'studio' AND s.studio > s2.studio * (1 - COALESCE(:percentage, 0)))" +
-            "   OR (:roomType = 'oceanView' AND s.oceanView > s2.oceanView * (1 - COALESCE(:percentage, 0)))" +
-            "   OR (:roomType = 'miniSuite' AND s.miniSuite > s2.miniSuite * (1 - COALESCE(:percentage, 0)))" +
-            "   OR (:roomType = 'suite' AND s.suite > s2.suite * (1 - COALESCE(:percentage, 0)))" +
-            "   OR (:roomType = 'spa' AND s.spa > s2.spa * (1 - COALESCE(:percentage, 0)))" +
-            "   OR (:roomType = 'haven' AND s.haven > s2.haven * (1 - COALESCE(:percentage, 0)))) " +
-            "AND s2.publishedDate = :to " +
-            "ORDER BY " +
-            "   CASE " +
-            "       WHEN :roomType = 'inside' THEN s.inside - s2.inside " +
-            "       WHEN :roomType = 'studio' THEN s.studio - s2.studio " +
-            "       WHEN :roomType = 'oceanView' THEN s.oceanView - s2.oceanView " +
-            "       WHEN :roomType = 'miniSuite' THEN s.miniSuite - s2.miniSuite " +
-            "       WHEN :roomType = 'suite' THEN s.suite - s2.suite " +
-            "       WHEN :roomType = 'spa' THEN s.spa - s2.spa " +
-            "       WHEN :roomType = 'haven' THEN s.haven - s2.haven " +
-            "       ELSE s.inside - s2.inside " +
-            "   END DESC")
-    List<Tuple> getSailingsPriceDrops(
-            @Param("from") LocalDate from,
-            @Param("to") LocalDate to,
-            @Param("percentage") BigDecimal percentage,
-            @Param("roomType") String roomType);
-
     @Query("SELECT se FROM SailingsEntity se " +
             "WHERE se.sailId = :sailId ")
     List<SailingsEntity> getSailingsPricesBySailId(@Param("sailId") BigDecimal sailId);
 
+    @Query("SELECT se FROM SailingsEntity se " +
+            "WHERE se.sailId IN :sailIds ")
+    List<SailingsEntity> getSailingsPricesBySailIds(@Param("sailIds") Collection<BigDecimal> sailIds);
+
 
+    // afterPrice and afterId are the last sailing already returned, both null for the first page
     @Query("SELECT se FROM SailingsEntity se " +
-            "JOIN se.cruiseDetailsEntity cd " +
-            "JOIN cd.destinationsEntities de " +
+            "JOIN FETCH se.cruiseDetailsEntity cd " +
             "WHERE (se.departureDate BETWEEN :departureDate AND :returnDate) " +
-            "AND (:destinationCode IS NULL OR de.destinationCode = :destinationCode) " +
+            "AND (:destinationCode IS NULL OR EXISTS (SELECT 1 FROM cd.destinationsEntities de " +
+            "     WHERE de.destinationCode = :destinationCode)) " +
             "AND (:priceFrom IS NULL OR se.inside >= :priceFrom) " +
             "AND (:priceUpTo IS NULL OR se.inside <= :priceUpTo) " +
             "AND (:departurePort IS NULL OR cd.embarkationPortCode = :departurePort) " +
             "AND (:daysAtSeaMin IS NULL OR cd.duration >= :daysAtSeaMin) " +
             "AND (:daysAtSeaMax IS NULL OR cd.duration <= :daysAtSeaMax) " +
-            "AND se.publishedDate = CURRENT_DATE " +
-            "ORDER BY se.inside ASC")
+            "AND se.publishedDate <= CURRENT_DATE AND se.validTo >= CURRENT_DATE " +
+            "AND (:afterId IS NULL " +
+            "     OR (:afterPrice IS NULL AND se.inside IS NULL AND se.id > :afterId) " +
+            "     OR (:afterPrice IS NOT NULL AND (se.inside IS NULL OR se.inside > :afterPrice " +
+            "         OR (se.inside = :afterPrice AND se.id > :afterId)))) " +
+            "ORDER BY se.inside ASC NULLS LAST, se.id ASC")
     List<SailingsEntity> findCruise(@Param("departureDate") LocalDate departureDate,
                                     @Param("returnDate") LocalDate returnDate,
                                     @Param("destinationCode") String destinationCode,
-                                    @Param("priceUpTo") BigDecimal priceUpTo,
-                                    @Param("priceFrom") BigDecimal priceFrom,
+                                    @Param("priceUpTo") Long priceUpTo,
+                                    @Param("priceFrom") Long priceFrom,
                                     @Param("daysAtSeaMin") BigDecimal daysAtSeaMin,
                                     @Param("daysAtSeaMax") BigDecimal daysAtSeaMax,
-                                    @Param("departurePort") String departurePort);
+                                    @Param("departurePort") String departurePort,
+                                    @Param("afterPrice") Long afterPrice,
+                                    @Param("afterId") Long afterId,
+                                    Pageable page);
+
+    @Query("SELECT se FROM SailingsEntity se " +
+            "JOIN FETCH se.cruiseDetailsEntity " +
+            "WHERE se.publishedDate <= :day AND se.validTo >= :day")
+    List<SailingsEntity> findSailingsValidOn(@Param("day") LocalDate day);
+
+    @Query(SAILING_PRICES + "WHERE se.validTo = :openEnd")
+    List<Tuple> findOpenSailingPrices(@Param("openEnd") LocalDate openEnd);
+
+    @Query(SAILING_PRICES + "WHERE se.publishedDate <= :day AND se.validTo >= :day")
+    List<Tuple> findSailingPricesValidOn(@Param("day") LocalDate day);
+
+    @Query(SAILING_PRICES + "WHERE se.publishedDate <= :day AND se.validTo >= :day " +
+            "AND se.sailId IN :sailIds AND se.packageId IN :packageIds")
+    List<Tuple> findSailingPricesValidOn(@Param("day") LocalDate day, @Param("sailIds") Collection<BigDecimal> sailIds,
+                                         @Param("packageIds") Collection<BigDecimal> packageIds);
+
+    @Query(SAILING_PRICES + "WHERE se.publishedDate = :day")
+    List<Tuple> findSailingPricesPublishedOn(@Param("day") LocalDate day);
+
+    @Query("SELECT DISTINCT se.publishedDate FROM SailingsEntity se ORDER BY se.publishedDate")
+    List<LocalDate> findPublishedDates();
+
+    @Query("SELECT DISTINCT se.sailId FROM SailingsEntity se WHERE se.validTo >= :from AND se.validTo < :to " +
+            "AND (:afterSailId IS NULL OR se.sailId > :afterSailId) ORDER BY se.sailId")
+    List<BigDecimal> findSailIdsValidUntil(@Param("from") LocalDate from, @Param("to") LocalDate to,
+                                           @Param("afterSailId") BigDecimal afterSailId, Pageable page);
+
+    @Query(SAILING_HISTORY + "WHERE se.sailId IN :sailIds AND se.validTo >= :from AND se.validTo < :to")
+    List<Tuple> findSailingHistoryValidUntil(@Param("sailIds") List<BigDecimal> sailIds,
+                                             @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query(SAILING_HISTORY + "WHERE se.sailId = :sailId AND se.publishedDate <= :to AND se.validTo >= :from " +
+            "ORDER BY se.publishedDate")
+    List<Tuple> findSailingHistory(@Param("sailId") BigDecimal sailId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT MIN(se.validTo) FROM SailingsEntity se")
+    LocalDate findOldestValidTo();
+
+    @Modifying
+    @Query("DELETE FROM SailingsEntity se WHERE se.validTo >= :from AND se.validTo < :to")
+    int deleteValidUntil(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // rows published after validTo are left alone, closing them would leave an empty interval
+    @Modifying
+    @Transactional
+    @Query("UPDATE SailingsEntity se SET se.validTo = :validTo WHERE se.id IN :ids AND se.publishedDate <= :validTo")
+    int closeSailings(@Param("ids") List<Long> ids, @Param("validTo") LocalDate validTo);
 
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM SailingsEntity se WHERE se.id IN :ids AND se.publishedDate = :day")
+    int deleteSailingsPublishedOn(@Param("ids") List<Long> ids, @Param("day") LocalDate day);
 
-}
\ No newline at end of file
+    // open rows of a delta ingest already reach the day and are left alone
+    @Modifying
+    @Transactional
+    @Query("UPDATE SailingsEntity se SET se.validTo = :day WHERE se.validTo = :lastDay")
+    int carryForward(@Param("lastDay") LocalDate lastDay, @Param("day") LocalDate day);
+}
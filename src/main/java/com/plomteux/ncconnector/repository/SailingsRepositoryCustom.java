@@ -0,0 +1,32 @@
+package com.plomteux.ncconnector.repository;
+
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import jakarta.persistence.Tuple;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/** One statement per room type column rather than a CASE over all of them, so the matching index is used. */
+public interface SailingsRepositoryCustom {
+    SailingsEntity findSailingsWithLowestPriceRoomType(BigDecimal sailId, RoomType roomType);
+
+    // keyed by sail id without trailing zeros; sail ids without a price are absent
+    Map<BigDecimal, SailingsEntity> findSailingsWithLowestPriceRoomType(Collection<BigDecimal> sailIds, RoomType roomType);
+
+    // afterDifference and afterId are the last row already returned, both null for the first page
+    List<Tuple> getSailingsPriceDrops(LocalDate from, LocalDate to, BigDecimal percentage, RoomType roomType,
+                                      Long afterDifference, Long afterId, Pageable page);
+
+    // computed in one pass over the history with window functions
+    List<SailingPriceStats> getPriceDropAnalytics(LocalDate from, LocalDate to, RoomType roomType, String destinationCode,
+                                                  String departurePort, int limit);
+
+    List<CruiseFacet> getCruiseFacets(LocalDate departureDate, LocalDate returnDate, String destinationCode,
+                                      Long priceUpTo, Long priceFrom, BigDecimal daysAtSeaMin,
+                                      BigDecimal daysAtSeaMax, String departurePort);
+}
@@ -0,0 +1,242 @@
+package com.plomteux.ncconnector.repository;
+
+import com.plomteux.ncconnector.entity.DurationBucket;
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+class SailingsRepositoryCustomImpl implements SailingsRepositoryCustom {
+    private static final String SAILING = "PARTITION BY %1$s.sail_id, %1$s.bundle_type, %1$s.package_id";
+    // rows of the window plus the one valid the day before, aggregated per sailing, latest row of each kept
+    private static final String PRICE_DROP_ANALYTICS = "SELECT r.sail_id, r.bundle_type, r.package_id, r.code, r.departure_date, "
+            + "r.price, r.min_price, r.largest_drop, r.low_date FROM ("
+            + "SELECT w.*, MAX(CASE WHEN w.price = w.min_price AND w.valid_to >= :from THEN LEAST(w.valid_to, :to) END) "
+            + "OVER (" + SAILING.formatted("w") + ") AS low_date FROM ("
+            + "SELECT h.*, MIN(CASE WHEN h.valid_to >= :from THEN h.price END) OVER (" + SAILING.formatted("h") + ") AS min_price, "
+            + "MAX(CASE WHEN h.published_date >= :from AND h.previous_price > h.price THEN h.previous_price - h.price END) "
+            + "OVER (" + SAILING.formatted("h") + ") AS largest_drop, "
+            + "ROW_NUMBER() OVER (" + SAILING.formatted("h") + " ORDER BY h.published_date DESC, h.id DESC) AS recency FROM ("
+            + "SELECT s.id, s.sail_id, s.bundle_type, s.package_id, s.departure_date, s.published_date, s.valid_to, c.code, "
+            + "s.%2$s AS price, LAG(s.%2$s) OVER (" + SAILING.formatted("s") + " ORDER BY s.published_date, s.id) AS previous_price "
+            + "FROM sailings_entity s LEFT JOIN cruise_details_entity c ON c.id = s.cruise_details_entity_id "
+            + "WHERE s.published_date <= :to AND s.valid_to >= :dayBefore AND s.%2$s IS NOT NULL%1$s"
+            + ") h) w) r WHERE r.recency = 1 AND r.valid_to >= :from "
+            + "ORDER BY COALESCE(r.largest_drop, 0) DESC, r.sail_id, r.bundle_type, r.package_id";
+    private static final String DESTINATION_FILTER = " AND EXISTS (SELECT 1 FROM cruise_destination cd "
+            + "JOIN destination_code_entity d ON d.id = cd.destination_code_entity_id "
+            + "WHERE cd.cruise_details_entity_id = c.id AND d.destination_code = :destinationCode)";
+    private static final String DEPARTURE_PORT_FILTER = " AND c.embarkation_port_code = :departurePort";
+    // the destination branch joins the codes of each cruise, so a sailing counts once in each of its destinations
+    private static final String CRUISE_FACETS = "WITH matched AS (SELECT s.inside, %2$s, c.id AS cruise_id, "
+            + "c.embarkation_port_code, c.duration FROM sailings_entity s JOIN cruise_details_entity c ON c.id = s.cruise_details_entity_id "
+            + "WHERE s.departure_date BETWEEN :departureDate AND :returnDate "
+            + "AND s.published_date <= CURRENT_DATE AND s.valid_to >= CURRENT_DATE%1$s) "
+            + "SELECT 'TOTAL' AS facet, CAST(NULL AS VARCHAR(255)) AS facet_value, COUNT(*) AS matches, MIN(inside) AS min_price FROM matched "
+            + "UNION ALL SELECT 'DESTINATION', d.destination_code, COUNT(*), MIN(m.inside) FROM matched m "
+            + "JOIN cruise_destination cd ON cd.cruise_details_entity_id = m.cruise_id "
+            + "JOIN destination_code_entity d ON d.id = cd.destination_code_entity_id GROUP BY d.destination_code "
+            + "UNION ALL SELECT 'DEPARTURE_PORT', embarkation_port_code, COUNT(*), MIN(inside) FROM matched "
+            + "WHERE embarkation_port_code IS NOT NULL GROUP BY embarkation_port_code "
+            + "UNION ALL SELECT 'DURATION', %3$s, COUNT(*), MIN(inside) FROM matched WHERE duration IS NOT NULL GROUP BY %3$s%4$s";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public SailingsEntity findSailingsWithLowestPriceRoomType(BigDecimal sailId, RoomType roomType) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<SailingsEntity> query = cb.createQuery(SailingsEntity.class);
+        Root<SailingsEntity> sailing = query.from(SailingsEntity.class);
+        Path<Long> price = sailing.get(roomType.getAttribute());
+        query.select(sailing)
+                .where(cb.equal(sailing.get("sailId"), sailId), cb.isNotNull(price))
+                .orderBy(cb.asc(price));
+        List<SailingsEntity> lowest = entityManager.createQuery(query)
+                .setMaxResults(1)
+                .getResultList();
+        return lowest.isEmpty() ? null : lowest.get(0);
+    }
+
+    @Override
+    public Map<BigDecimal, SailingsEntity> findSailingsWithLowestPriceRoomType(Collection<BigDecimal> sailIds, RoomType roomType) {
+        if (sailIds.isEmpty()) {
+            return Map.of();
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<SailingsEntity> query = cb.createQuery(SailingsEntity.class);
+        Root<SailingsEntity> sailing = query.from(SailingsEntity.class);
+        Path<Long> price = sailing.get(roomType.getAttribute());
+        Subquery<Long> lowest = query.subquery(Long.class);
+        Root<SailingsEntity> other = lowest.from(SailingsEntity.class);
+        lowest.select(cb.min(other.get(roomType.getAttribute())))
+                .where(cb.equal(other.get("sailId"), sailing.get("sailId")));
+        query.select(sailing)
+                .where(sailing.get("sailId").in(sailIds), cb.equal(price, lowest))
+                .orderBy(cb.asc(sailing.get("id")));
+        // on a tie the row with the lowest id wins
+        Map<BigDecimal, SailingsEntity> bySailId = new HashMap<>();
+        entityManager.createQuery(query).getResultList()
+                .forEach(row -> bySailId.putIfAbsent(row.getSailId().stripTrailingZeros(), row));
+        return bySailId;
+    }
+
+    @Override
+    public List<Tuple> getSailingsPriceDrops(LocalDate from, LocalDate to, BigDecimal percentage, RoomType roomType,
+                                             Long afterDifference, Long afterId, Pageable page) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<SailingsEntity> before = query.from(SailingsEntity.class);
+        Root<SailingsEntity> after = query.from(SailingsEntity.class);
+        Path<Long> oldPrice = before.get(roomType.getAttribute());
+        Path<Long> newPrice = after.get(roomType.getAttribute());
+        Expression<Long> priceDifference = cb.diff(oldPrice, newPrice);
+        BigDecimal threshold = BigDecimal.ONE.subtract(percentage != null ? percentage : BigDecimal.ZERO);
+
+        after.fetch("cruiseDetailsEntity", JoinType.LEFT);
+        List<Predicate> predicates = new ArrayList<>(List.of(
+                cb.equal(before.get("sailId"), after.get("sailId")),
+                cb.equal(before.get("bundleType"), after.get("bundleType")),
+                cb.equal(before.get("packageId"), after.get("packageId")),
+                validOn(cb, before, from),
+                validOn(cb, after, to),
+                cb.lt(newPrice, oldPrice),
+                cb.le(newPrice, cb.prod(oldPrice, threshold))));
+        if (afterId != null) {
+            Path<Long> id = after.get("id");
+            predicates.add(cb.or(cb.lessThan(priceDifference, afterDifference),
+                    cb.and(cb.equal(priceDifference, afterDifference), cb.gt(id, afterId))));
+        }
+        query.multiselect(after, priceDifference.alias("priceDifference"))
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(cb.desc(priceDifference), cb.asc(after.get("id")));
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (page.isPaged()) {
+            typedQuery.setFirstResult((int) page.getOffset()).setMaxResults(page.getPageSize());
+        }
+        return typedQuery.getResultList();
+    }
+
+    @Override
+    public List<SailingPriceStats> getPriceDropAnalytics(LocalDate from, LocalDate to, RoomType roomType, String destinationCode,
+                                                         String departurePort, int limit) {
+        // filters are only added when set, so that no untyped null parameter reaches the database
+        String filters = (destinationCode != null ? DESTINATION_FILTER : "") + (departurePort != null ? DEPARTURE_PORT_FILTER : "");
+        Query query = entityManager.createNativeQuery(PRICE_DROP_ANALYTICS.formatted(filters, column(roomType)))
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setParameter("dayBefore", from.minusDays(1))
+                .setMaxResults(limit);
+        if (destinationCode != null) {
+            query.setParameter("destinationCode", destinationCode);
+        }
+        if (departurePort != null) {
+            query.setParameter("departurePort", departurePort);
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        return rows.stream()
+                .map(row -> new SailingPriceStats((BigDecimal) row[0], (String) row[1], (BigDecimal) row[2], (String) row[3],
+                        toLocalDate(row[4]), ((Number) row[5]).longValue(), ((Number) row[6]).longValue(),
+                        row[7] != null ? ((Number) row[7]).longValue() : null, toLocalDate(row[8])))
+                .toList();
+    }
+
+    @Override
+    public List<CruiseFacet> getCruiseFacets(LocalDate departureDate, LocalDate returnDate, String destinationCode,
+                                             Long priceUpTo, Long priceFrom, BigDecimal daysAtSeaMin,
+                                             BigDecimal daysAtSeaMax, String departurePort) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("departureDate", departureDate);
+        parameters.put("returnDate", returnDate);
+        StringBuilder filters = new StringBuilder();
+        if (destinationCode != null) {
+            filters.append(DESTINATION_FILTER);
+            parameters.put("destinationCode", destinationCode);
+        }
+        if (departurePort != null) {
+            filters.append(DEPARTURE_PORT_FILTER);
+            parameters.put("departurePort", departurePort);
+        }
+        if (priceFrom != null) {
+            filters.append(" AND s.inside >= :priceFrom");
+            parameters.put("priceFrom", priceFrom);
+        }
+        if (priceUpTo != null) {
+            filters.append(" AND s.inside <= :priceUpTo");
+            parameters.put("priceUpTo", priceUpTo);
+        }
+        if (daysAtSeaMin != null) {
+            filters.append(" AND c.duration >= :daysAtSeaMin");
+            parameters.put("daysAtSeaMin", daysAtSeaMin);
+        }
+        if (daysAtSeaMax != null) {
+            filters.append(" AND c.duration <= :daysAtSeaMax");
+            parameters.put("daysAtSeaMax", daysAtSeaMax);
+        }
+        StringBuilder durationBucket = new StringBuilder("CASE");
+        DurationBucket[] buckets = DurationBucket.values();
+        for (int i = 0; i < buckets.length - 1; i++) {
+            durationBucket.append(" WHEN duration <= ").append(buckets[i].getMaxDays())
+                    .append(" THEN '").append(buckets[i].getLabel()).append("'");
+        }
+        durationBucket.append(" ELSE '").append(buckets[buckets.length - 1].getLabel()).append("' END");
+        StringBuilder roomTypes = new StringBuilder();
+        for (RoomType roomType : RoomType.values()) {
+            roomTypes.append(" UNION ALL SELECT 'ROOM_TYPE', '%1$s', COUNT(%2$s), MIN(%2$s) FROM matched"
+                    .formatted(roomType.name(), column(roomType)));
+        }
+        String prices = Arrays.stream(RoomType.values())
+                .filter(roomType -> roomType != RoomType.INSIDE)
+                .map(roomType -> "s." + column(roomType))
+                .collect(Collectors.joining(", "));
+
+        Query query = entityManager.createNativeQuery(CRUISE_FACETS.formatted(filters, prices, durationBucket, roomTypes));
+        parameters.forEach(query::setParameter);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        return rows.stream()
+                .map(row -> new CruiseFacet(CruiseFacet.Facet.valueOf(((String) row[0]).trim()), (String) row[1],
+                        ((Number) row[2]).longValue(), row[3] != null ? ((Number) row[3]).longValue() : null))
+                .toList();
+    }
+
+    // as named by the physical naming strategy
+    private static String column(RoomType roomType) {
+        return roomType.getAttribute().replaceAll("([a-z])([A-Z])", "$1_$2").toLowerCase(Locale.ROOT);
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        return value instanceof Date date ? date.toLocalDate() : (LocalDate) value;
+    }
+
+    private static Predicate validOn(CriteriaBuilder cb, Root<SailingsEntity> sailing, LocalDate day) {
+        return cb.and(cb.lessThanOrEqualTo(sailing.get("publishedDate"), day),
+                cb.greaterThanOrEqualTo(sailing.get("validTo"), day));
+    }
+}
@@ -0,0 +1,17 @@
+package com.plomteux.ncconnector.repository;
+
+import com.plomteux.ncconnector.entity.SailingsRollupEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SailingsRollupRepository extends JpaRepository<SailingsRollupEntity, Long> {
+    List<SailingsRollupEntity> findBySailIdInAndWeekStartBetween(Collection<BigDecimal> sailIds, LocalDate from, LocalDate to);
+
+    List<SailingsRollupEntity> findBySailIdAndWeekStartBetween(BigDecimal sailId, LocalDate from, LocalDate to);
+}
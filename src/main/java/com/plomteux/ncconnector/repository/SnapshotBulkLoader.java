@@ -0,0 +1,187 @@
+package com.plomteux.ncconnector.repository;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.DestinationCodeEntity;
+import com.plomteux.ncconnector.entity.PortsOfCallEntity;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/** Loads a snapshot through COPY, with ids reserved up front so child rows never read their parent back. */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SnapshotBulkLoader {
+    private static final int ALLOCATION_SIZE = 50;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private Boolean supported;
+
+    public boolean isSupported() {
+        if (supported == null) {
+            supported = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    connection.isWrapperFor(PGConnection.class)));
+        }
+        return supported;
+    }
+
+    // the callback gets the connection bound to the caller's transaction, which owns commit and rollback
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void load(List<CruiseDetailsEntity> cruises) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            copy(connection, cruises);
+            return null;
+        });
+    }
+
+    private void copy(Connection connection, List<CruiseDetailsEntity> cruises) throws SQLException {
+        List<SailingsEntity> sailings = children(cruises, CruiseDetailsEntity::getSailingsEntities);
+        List<CruiseDetailsEntity> newCruises = cruises.stream().filter(cruise -> cruise.getId() == null).toList();
+        List<Link> destinations = links(newCruises, CruiseDetailsEntity::getDestinationsEntities, DestinationCodeEntity::getId);
+        List<Link> ports = links(newCruises, CruiseDetailsEntity::getPortsOfCallEntities, PortsOfCallEntity::getId);
+
+        Deque<Long> cruiseIds = reserveIds(connection, "cruise_details_entity_seq", newCruises.size());
+        newCruises.forEach(cruise -> cruise.setId(cruiseIds.pop()));
+        Deque<Long> sailingIds = reserveIds(connection, "sailings_entity_seq", sailings.size());
+        sailings.forEach(sailing -> {
+            sailing.setId(sailingIds.pop());
+            sailing.prePersist();
+        });
+
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        copyRows(copyManager, "cruise_details_entity (id, bundle_type, code, ship_code, duration, guest_count, embarkation_port_code)",
+                newCruises, cruise -> row(cruise.getId(), cruise.getBundleType(), cruise.getCode(), cruise.getShipCode(),
+                        cruise.getDuration(), cruise.getGuestCount(), cruise.getEmbarkationPortCode()));
+        copyRows(copyManager, "sailings_entity (id, sail_id, bundle_type, package_id, departure_date, return_date, published_date, valid_to, "
+                        + "studio, inside, ocean_view, balcony, mini_suite, suite, haven, spa, old_price, cruise_details_entity_id)",
+                sailings, sailing -> row(sailing.getId(), sailing.getSailId(), sailing.getBundleType(), sailing.getPackageId(),
+                        sailing.getDepartureDate(), sailing.getReturnDate(), sailing.getPublishedDate(), sailing.getValidTo(),
+                        sailing.getStudio(), sailing.getInside(), sailing.getOceanView(), sailing.getBalcony(),
+                        sailing.getMiniSuite(), sailing.getSuite(), sailing.getHaven(), sailing.getSpa(), sailing.getOldPrice(),
+                        sailing.getCruiseDetailsEntity().getId()));
+        copyRows(copyManager, "cruise_destination (cruise_details_entity_id, destination_code_entity_id)",
+                destinations, link -> row(link.cruise().getId(), link.target()));
+        copyRows(copyManager, "cruise_port_of_call (cruise_details_entity_id, ports_of_call_entity_id)",
+                ports, link -> row(link.cruise().getId(), link.target()));
+        log.debug("Copied {} cruises, {} sailings, {} destination links and {} port of call links",
+                newCruises.size(), sailings.size(), destinations.size(), ports.size());
+    }
+
+    private record Link(CruiseDetailsEntity cruise, Long target) {
+    }
+
+    private static <T> List<Link> links(List<CruiseDetailsEntity> cruises, Function<CruiseDetailsEntity, List<T>> accessor,
+                                        Function<T, Long> id) {
+        return cruises.stream()
+                .filter(cruise -> accessor.apply(cruise) != null)
+                .flatMap(cruise -> accessor.apply(cruise).stream().map(target -> new Link(cruise, id.apply(target))))
+                .toList();
+    }
+
+    private static <T> List<T> children(List<CruiseDetailsEntity> cruises, Function<CruiseDetailsEntity, List<T>> accessor) {
+        return cruises.stream()
+                .map(accessor)
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    // same blocks as Hibernate's pooled optimizer: each nextval is the upper bound of ALLOCATION_SIZE ids
+    private static Deque<Long> reserveIds(Connection connection, String sequence, int count) throws SQLException {
+        Deque<Long> ids = new ArrayDeque<>(count);
+        int blocks = (count + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT nextval('" + sequence + "') FROM generate_series(1, ?)")) {
+            statement.setInt(1, blocks);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next() && ids.size() < count) {
+                    long upper = resultSet.getLong(1);
+                    for (long id = Math.max(1, upper - ALLOCATION_SIZE + 1); id <= upper && ids.size() < count; id++) {
+                        ids.add(id);
+                    }
+                }
+            }
+        }
+        if (ids.size() < count) {
+            // only possible when a block was clipped at the start of the sequence
+            ids.addAll(reserveIds(connection, sequence, count - ids.size()));
+        }
+        return ids;
+    }
+
+    private static <T> void copyRows(CopyManager copyManager, String target, List<T> rows, Function<T, String> encoder) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        CopyIn copyIn = copyManager.copyIn("COPY " + target + " FROM STDIN");
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE);
+            for (T row : rows) {
+                buffer.append(encoder.apply(row));
+                if (buffer.length() >= COPY_BUFFER_SIZE) {
+                    write(copyIn, buffer);
+                }
+            }
+            write(copyIn, buffer);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private static void write(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    // COPY text format: tab separated, \N for null, backslash escapes
+    static String row(Object... values) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                row.append('\t');
+            }
+            Object value = values[i];
+            if (value == null) {
+                row.append("\\N");
+                continue;
+            }
+            String text = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+            for (int c = 0; c < text.length(); c++) {
+                char ch = text.charAt(c);
+                switch (ch) {
+                    case '\\' -> row.append("\\\\");
+                    case '\t' -> row.append("\\t");
+                    case '\n' -> row.append("\\n");
+                    case '\r' -> row.append("\\r");
+                    default -> row.append(ch);
+                }
+            }
+        }
+        return row.append('\n').toString();
+    }
+}
@@ -0,0 +1,12 @@
+package com.plomteux.ncconnector.repository;
+
+import com.plomteux.ncconnector.entity.UpstreamSnapshotEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface UpstreamSnapshotRepository extends JpaRepository<UpstreamSnapshotEntity, Long> {
+    Optional<UpstreamSnapshotEntity> findFirstByOrderByPublishedDateDescIdDesc();
+}
@@ -1,6 +1,7 @@
 package com.plomteux.ncconnector.scheduler;
 
-import com.plomteux.ncconnector.controller.NCControllerApiImpl;
+import com.plomteux.ncconnector.model.IngestJob;
+import com.plomteux.ncconnector.service.IngestJobService;
 import lombok.AllArgsConstructor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -8,11 +9,11 @@ import org.springframework.stereotype.Component;
 @Component
 @AllArgsConstructor
 public class DailyRequestScheduler {
-    private NCControllerApiImpl ncControllerApi;
+    private IngestJobService ingestJobService;
 
     @Scheduled(cron = "0 0 0 * * ?")
     public void triggerDailyCruiseDetailsRequest() {
-        ncControllerApi.getCruiseDetails();
+        ingestJobService.submit(IngestJob.TriggerEnum.SCHEDULED);
     }
 
 }
@@ -0,0 +1,19 @@
+package com.plomteux.ncconnector.scheduler;
+
+import com.plomteux.ncconnector.service.SailingsCompaction;
+import lombok.AllArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@AllArgsConstructor
+public class SailingsCompactionScheduler {
+    private SailingsCompaction sailingsCompaction;
+
+    @Scheduled(cron = "${ncl.sailings.compaction.cron:0 0 3 * * ?}")
+    public void triggerSailingsCompaction() {
+        sailingsCompaction.compact(LocalDate.now());
+    }
+}
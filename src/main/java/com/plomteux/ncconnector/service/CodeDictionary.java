@@ -0,0 +1,110 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.DestinationCodeEntity;
+import com.plomteux.ncconnector.entity.PortsOfCallEntity;
+import com.plomteux.ncconnector.repository.DestinationRepository;
+import com.plomteux.ncconnector.repository.PortsOfCallEntityRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/** Destination and port of call dictionary rows, cached once looked up or inserted. */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CodeDictionary {
+    private final DestinationRepository destinationRepository;
+    private final PortsOfCallEntityRepository portsOfCallEntityRepository;
+    private final Map<String, DestinationCodeEntity> destinations = new HashMap<>();
+    private final Map<String, PortsOfCallEntity> portsOfCall = new HashMap<>();
+
+    public synchronized void intern(List<CruiseDetailsEntity> cruises) {
+        Set<String> newDestinations = missing(cruises, CruiseDetailsEntity::getDestinationsEntities,
+                DestinationCodeEntity::getDestinationCode, destinations);
+        if (!newDestinations.isEmpty()) {
+            destinationRepository.findByDestinationCodeIn(newDestinations)
+                    .forEach(destination -> destinations.put(destination.getDestinationCode(), destination));
+            newDestinations.removeAll(destinations.keySet());
+            destinationRepository.saveAll(newDestinations.stream().map(code -> {
+                DestinationCodeEntity destination = new DestinationCodeEntity();
+                destination.setDestinationCode(code);
+                return destination;
+            }).toList()).forEach(destination -> destinations.put(destination.getDestinationCode(), destination));
+        }
+        Set<String> newPortsOfCall = missing(cruises, CruiseDetailsEntity::getPortsOfCallEntities,
+                PortsOfCallEntity::getPortsOfCall, portsOfCall);
+        if (!newPortsOfCall.isEmpty()) {
+            portsOfCallEntityRepository.findByPortsOfCallIn(newPortsOfCall)
+                    .forEach(port -> portsOfCall.put(port.getPortsOfCall(), port));
+            newPortsOfCall.removeAll(portsOfCall.keySet());
+            portsOfCallEntityRepository.saveAll(newPortsOfCall.stream().map(code -> {
+                PortsOfCallEntity port = new PortsOfCallEntity();
+                port.setPortsOfCall(code);
+                return port;
+            }).toList()).forEach(port -> portsOfCall.put(port.getPortsOfCall(), port));
+        }
+        if (!newDestinations.isEmpty() || !newPortsOfCall.isEmpty()) {
+            log.info("Added {} destinations and {} ports of call to the dictionary", newDestinations.size(), newPortsOfCall.size());
+            forgetOnRollback(newDestinations, newPortsOfCall);
+        }
+
+        for (CruiseDetailsEntity cruise : cruises) {
+            cruise.setDestinationsEntities(resolve(cruise.getDestinationsEntities(), DestinationCodeEntity::getDestinationCode, destinations));
+            cruise.setPortsOfCallEntities(resolve(cruise.getPortsOfCallEntities(), PortsOfCallEntity::getPortsOfCall, portsOfCall));
+        }
+    }
+
+    // rows inserted by a transaction that rolls back must not stay cached
+    private void forgetOnRollback(Set<String> newDestinations, Set<String> newPortsOfCall) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    synchronized (CodeDictionary.this) {
+                        destinations.keySet().removeAll(newDestinations);
+                        portsOfCall.keySet().removeAll(newPortsOfCall);
+                    }
+                }
+            }
+        });
+    }
+
+    private static <T> Set<String> missing(List<CruiseDetailsEntity> cruises, Function<CruiseDetailsEntity, List<T>> codes,
+                                           Function<T, String> code, Map<String, T> known) {
+        Set<String> missing = new LinkedHashSet<>();
+        cruises.stream()
+                .map(codes)
+                .filter(Objects::nonNull)
+                .flatMap(Collection::stream)
+                .map(code)
+                .filter(value -> value != null && !known.containsKey(value))
+                .forEach(missing::add);
+        return missing;
+    }
+
+    private static <T> List<T> resolve(List<T> entries, Function<T, String> code, Map<String, T> known) {
+        if (entries == null) {
+            return null;
+        }
+        return entries.stream()
+                .map(code)
+                .filter(Objects::nonNull)
+                .map(known::get)
+                .toList();
+    }
+}
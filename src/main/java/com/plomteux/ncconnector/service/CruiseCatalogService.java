@@ -0,0 +1,58 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.mapper.CruiseDetailsMapper;
+import com.plomteux.ncconnector.mapper.SailingsMapper;
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.model.Sailings;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/** Cached already mapped, as the entities hold lazy associations that cannot outlive their session. */
+@Service
+@AllArgsConstructor
+@Slf4j
+public class CruiseCatalogService {
+    public static final String DESTINATION_CODES = "destinationCodes";
+    public static final String CRUISES_BY_DESTINATION = "cruisesByDestination";
+    public static final String CRUISE_PRICES_BY_CODE = "cruisePricesByCode";
+
+    private final CruiseDetailsRepository cruiseDetailsRepository;
+    private final CruiseDetailsMapper cruiseDetailsMapper;
+    private final SailingsMapper sailingsMapper;
+
+    @Cacheable(DESTINATION_CODES)
+    public List<String> getDestinationCodes() {
+        return List.copyOf(cruiseDetailsRepository.findUniqueDestinationCodes());
+    }
+
+    @Cacheable(CRUISES_BY_DESTINATION)
+    @Transactional(readOnly = true)
+    public List<CruiseDetails> getCruisesByDestinationCode(String destinationCode) {
+        return cruiseDetailsRepository.findByDestinationCode(destinationCode).stream()
+                .map(cruiseDetailsMapper::toCruiseDetails)
+                .toList();
+    }
+
+    @Cacheable(CRUISE_PRICES_BY_CODE)
+    @Transactional(readOnly = true)
+    public List<Sailings> getCruisePricesByCode(String code) {
+        return cruiseDetailsRepository.findByCode(code).stream()
+                .map(CruiseDetailsEntity::getSailingsEntities)
+                .flatMap(List::stream)
+                .map(sailingsMapper::toSailings)
+                .toList();
+    }
+
+    @CacheEvict(cacheNames = {DESTINATION_CODES, CRUISES_BY_DESTINATION, CRUISE_PRICES_BY_CODE}, allEntries = true)
+    public void evictAll() {
+        log.debug("Catalogue caches evicted");
+    }
+}
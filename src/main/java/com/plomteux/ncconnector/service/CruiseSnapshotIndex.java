@@ -0,0 +1,341 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.DestinationCodeEntity;
+import com.plomteux.ncconnector.entity.DurationBucket;
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.mapper.CruiseOverViewMapper;
+import com.plomteux.ncconnector.model.CruiseOverView;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.CruiseFacet;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Sailings valid today, held in memory to answer /find-cruise without a query; rebuilt after every ingest. */
+@Component
+@AllArgsConstructor
+@Slf4j
+public class CruiseSnapshotIndex implements ApplicationRunner {
+    private static final int FETCH_BATCH_SIZE = 1000;
+
+    private final SailingsRepository sailingsRepository;
+    private final CruiseDetailsRepository cruiseDetailsRepository;
+    private final CruiseOverViewMapper cruiseOverViewMapper;
+    private final PlatformTransactionManager transactionManager;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    @Value("${ncl.snapshot-index.enabled:true}")
+    private Boolean ENABLED;
+
+    public record Hit(long sailingId, Long inside, CruiseOverView cruiseOverView) {
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    public void rebuild() {
+        if (!Boolean.TRUE.equals(ENABLED)) {
+            return;
+        }
+        long start = System.nanoTime();
+        LocalDate day = LocalDate.now();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        try {
+            Snapshot built = transaction.execute(status -> build(day));
+            snapshot.set(built);
+            log.info("Snapshot index of {} sailings for {} built in {} ms", built.size(), day, (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            // a snapshot that no longer matches the database is worse than none
+            snapshot.set(null);
+            log.warn("Snapshot index not rebuilt, /find-cruise reads the database: {}", e.getMessage());
+        }
+    }
+
+    // same filters, order and keyset as SailingsRepository.findCruise, or empty when there is no snapshot for today
+    public Optional<List<Hit>> findCruise(LocalDate departureDate, LocalDate returnDate, String destinationCode,
+                                          Long priceUpTo, Long priceFrom, BigDecimal daysAtSeaMin,
+                                          BigDecimal daysAtSeaMax, String departurePort,
+                                          Long afterPrice, Long afterId, int limit) {
+        Snapshot current = snapshot.get();
+        if (current == null || !current.day.equals(LocalDate.now())) {
+            return Optional.empty();
+        }
+        return Optional.of(current.find(departureDate, returnDate, destinationCode, priceUpTo, priceFrom,
+                daysAtSeaMin, daysAtSeaMax, departurePort, afterPrice, afterId, limit));
+    }
+
+    public Optional<List<CruiseFacet>> getCruiseFacets(LocalDate departureDate, LocalDate returnDate, String destinationCode,
+                                                       Long priceUpTo, Long priceFrom, BigDecimal daysAtSeaMin,
+                                                       BigDecimal daysAtSeaMax, String departurePort) {
+        Snapshot current = snapshot.get();
+        if (current == null || !current.day.equals(LocalDate.now())) {
+            return Optional.empty();
+        }
+        return Optional.of(current.facets(departureDate, returnDate, destinationCode, priceUpTo, priceFrom,
+                daysAtSeaMin, daysAtSeaMax, departurePort));
+    }
+
+    private Snapshot build(LocalDate day) {
+        List<SailingsEntity> sailings = new ArrayList<>(sailingsRepository.findSailingsValidOn(day));
+        List<Long> cruiseIds = sailings.stream()
+                .map(SailingsEntity::getCruiseDetailsEntity)
+                .map(CruiseDetailsEntity::getId)
+                .distinct()
+                .toList();
+        for (int from = 0; from < cruiseIds.size(); from += FETCH_BATCH_SIZE) {
+            List<Long> batch = cruiseIds.subList(from, Math.min(from + FETCH_BATCH_SIZE, cruiseIds.size()));
+            cruiseDetailsRepository.fetchDestinations(batch);
+            cruiseDetailsRepository.fetchPortsOfCall(batch);
+        }
+        sailings.sort(Comparator.comparing(SailingsEntity::getInside, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(SailingsEntity::getId));
+        return new Snapshot(day, sailings, cruiseOverViewMapper);
+    }
+
+    // one position per sailing, by inside price then id with unpriced ones last, so bounds are binary searches
+    private static final class Snapshot {
+        private final LocalDate day;
+        private final long[] ids;
+        private final long[] insidePrices;
+        private final long[][] prices;
+        private final long[] departureDays;
+        private final double[] durations;
+        private final int[] embarkationPorts;
+        private final Map<String, Integer> portIds = new HashMap<>();
+        private final Map<String, BitSet> destinations = new HashMap<>();
+        private final CruiseOverView[] cruiseOverViews;
+        private final int priced;
+
+        private Snapshot(LocalDate day, List<SailingsEntity> sailings, CruiseOverViewMapper cruiseOverViewMapper) {
+            int size = sailings.size();
+            this.day = day;
+            ids = new long[size];
+            insidePrices = new long[size];
+            prices = new long[RoomType.values().length][size];
+            departureDays = new long[size];
+            durations = new double[size];
+            embarkationPorts = new int[size];
+            cruiseOverViews = new CruiseOverView[size];
+            int pricedCount = 0;
+            for (int i = 0; i < size; i++) {
+                SailingsEntity sailing = sailings.get(i);
+                CruiseDetailsEntity cruise = sailing.getCruiseDetailsEntity();
+                ids[i] = sailing.getId();
+                if (sailing.getInside() != null) {
+                    insidePrices[i] = sailing.getInside();
+                    pricedCount++;
+                }
+                for (RoomType roomType : RoomType.values()) {
+                    Long price = roomType.price(sailing);
+                    prices[roomType.ordinal()][i] = price != null ? price : SailingPrices.NO_PRICE;
+                }
+                departureDays[i] = sailing.getDepartureDate() != null ? sailing.getDepartureDate().toEpochDay() : Long.MIN_VALUE;
+                durations[i] = toDouble(cruise.getDuration());
+                embarkationPorts[i] = cruise.getEmbarkationPortCode() != null
+                        ? portIds.computeIfAbsent(cruise.getEmbarkationPortCode(), code -> portIds.size())
+                        : -1;
+                int position = i;
+                cruise.getDestinationsEntities().stream()
+                        .map(DestinationCodeEntity::getDestinationCode)
+                        .filter(Objects::nonNull)
+                        .forEach(code -> destinations.computeIfAbsent(code, key -> new BitSet(size)).set(position));
+                cruiseOverViews[i] = cruiseOverViewMapper.toCruiseOverView(sailing);
+            }
+            priced = pricedCount;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        List<Hit> find(LocalDate departureDate, LocalDate returnDate, String destinationCode, Long priceUpTo,
+                       Long priceFrom, BigDecimal daysAtSeaMin, BigDecimal daysAtSeaMax, String departurePort,
+                       Long afterPrice, Long afterId, int limit) {
+            Filter filter = filter(departureDate, returnDate, destinationCode, daysAtSeaMin, daysAtSeaMax, departurePort);
+            if (filter == null) {
+                return List.of();
+            }
+            int from = from(priceFrom);
+            int to = to(priceUpTo, priceFrom != null);
+            if (afterId != null) {
+                from = Math.max(from, afterPrice != null ? firstAbove(afterPrice, afterId, false) : firstUnpricedAbove(afterId));
+            }
+
+            List<Hit> hits = new ArrayList<>(Math.min(limit, Math.max(to - from, 0)));
+            for (int i = from; i < to && hits.size() < limit; i++) {
+                if (matches(filter, i)) {
+                    hits.add(new Hit(ids[i], i < priced ? insidePrices[i] : null, cruiseOverViews[i]));
+                }
+            }
+            return hits;
+        }
+
+        List<CruiseFacet> facets(LocalDate departureDate, LocalDate returnDate, String destinationCode, Long priceUpTo,
+                                 Long priceFrom, BigDecimal daysAtSeaMin, BigDecimal daysAtSeaMax, String departurePort) {
+            BitSet matched = new BitSet(ids.length);
+            Filter filter = filter(departureDate, returnDate, destinationCode, daysAtSeaMin, daysAtSeaMax, departurePort);
+            if (filter != null) {
+                for (int i = from(priceFrom), to = to(priceUpTo, priceFrom != null); i < to; i++) {
+                    if (matches(filter, i)) {
+                        matched.set(i);
+                    }
+                }
+            }
+
+            // positions ascend by inside price, so the first match of a group holds its lowest one
+            List<CruiseFacet> facets = new ArrayList<>();
+            facets.add(facet(CruiseFacet.Facet.TOTAL, null, matched));
+            destinations.forEach((code, positions) -> {
+                BitSet group = (BitSet) positions.clone();
+                group.and(matched);
+                if (!group.isEmpty()) {
+                    facets.add(facet(CruiseFacet.Facet.DESTINATION, code, group));
+                }
+            });
+            BitSet[] ports = new BitSet[portIds.size()];
+            BitSet[] durationBuckets = new BitSet[DurationBucket.values().length];
+            long[] roomTypeCounts = new long[RoomType.values().length];
+            long[] roomTypeMins = new long[RoomType.values().length];
+            Arrays.fill(roomTypeMins, SailingPrices.NO_PRICE);
+            for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                if (embarkationPorts[i] >= 0) {
+                    add(ports, embarkationPorts[i], i);
+                }
+                if (!Double.isNaN(durations[i])) {
+                    add(durationBuckets, DurationBucket.of(durations[i]).ordinal(), i);
+                }
+                for (int type = 0; type < roomTypeCounts.length; type++) {
+                    long price = prices[type][i];
+                    if (price != SailingPrices.NO_PRICE) {
+                        roomTypeCounts[type]++;
+                        roomTypeMins[type] = roomTypeMins[type] == SailingPrices.NO_PRICE ? price : Math.min(roomTypeMins[type], price);
+                    }
+                }
+            }
+            portIds.forEach((code, port) -> {
+                if (ports[port] != null) {
+                    facets.add(facet(CruiseFacet.Facet.DEPARTURE_PORT, code, ports[port]));
+                }
+            });
+            for (DurationBucket bucket : DurationBucket.values()) {
+                if (durationBuckets[bucket.ordinal()] != null) {
+                    facets.add(facet(CruiseFacet.Facet.DURATION, bucket.getLabel(), durationBuckets[bucket.ordinal()]));
+                }
+            }
+            for (RoomType roomType : RoomType.values()) {
+                long min = roomTypeMins[roomType.ordinal()];
+                facets.add(new CruiseFacet(CruiseFacet.Facet.ROOM_TYPE, roomType.name(), roomTypeCounts[roomType.ordinal()],
+                        min != SailingPrices.NO_PRICE ? min : null));
+            }
+            return facets;
+        }
+
+        // null when a destination or port is unknown, so nothing matches
+        private Filter filter(LocalDate departureDate, LocalDate returnDate, String destinationCode,
+                              BigDecimal daysAtSeaMin, BigDecimal daysAtSeaMax, String departurePort) {
+            BitSet destination = destinationCode != null ? destinations.get(destinationCode) : null;
+            int port = departurePort != null ? portIds.getOrDefault(departurePort, -2) : -1;
+            if (destinationCode != null && destination == null || port == -2) {
+                return null;
+            }
+            return new Filter(departureDate.toEpochDay(), returnDate.toEpochDay(), destination, port,
+                    daysAtSeaMin != null ? daysAtSeaMin.doubleValue() : Double.NEGATIVE_INFINITY,
+                    daysAtSeaMax != null ? daysAtSeaMax.doubleValue() : Double.POSITIVE_INFINITY,
+                    daysAtSeaMin != null || daysAtSeaMax != null);
+        }
+
+        private int from(Long priceFrom) {
+            return priceFrom != null ? firstAbove(priceFrom, Long.MIN_VALUE, true) : 0;
+        }
+
+        // any price bound leaves out unpriced sailings
+        private int to(Long priceUpTo, boolean bounded) {
+            if (priceUpTo != null) {
+                return firstAbove(priceUpTo, Long.MAX_VALUE, false);
+            }
+            return bounded ? priced : ids.length;
+        }
+
+        private boolean matches(Filter filter, int i) {
+            return departureDays[i] >= filter.firstDay() && departureDays[i] <= filter.lastDay()
+                    && (filter.destination() == null || filter.destination().get(i))
+                    && (filter.port() == -1 || embarkationPorts[i] == filter.port())
+                    && (!filter.durationBounded() || (!Double.isNaN(durations[i])
+                    && durations[i] >= filter.minDuration() && durations[i] <= filter.maxDuration()));
+        }
+
+        private CruiseFacet facet(CruiseFacet.Facet facet, String value, BitSet positions) {
+            int first = positions.nextSetBit(0);
+            return new CruiseFacet(facet, value, positions.cardinality(), first >= 0 && first < priced ? insidePrices[first] : null);
+        }
+
+        private void add(BitSet[] groups, int group, int position) {
+            if (groups[group] == null) {
+                groups[group] = new BitSet(ids.length);
+            }
+            groups[group].set(position);
+        }
+
+        // port -1 for any
+        private record Filter(long firstDay, long lastDay, BitSet destination, int port, double minDuration,
+                              double maxDuration, boolean durationBounded) {
+        }
+
+        private int firstAbove(long price, long id, boolean inclusive) {
+            int low = 0;
+            int high = priced;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int compare = insidePrices[mid] != price ? Long.compare(insidePrices[mid], price) : Long.compare(ids[mid], id);
+                if (compare < 0 || (compare == 0 && !inclusive)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int firstUnpricedAbove(long id) {
+            int low = priced;
+            int high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ids[mid] <= id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static double toDouble(BigDecimal value) {
+            return value != null ? value.doubleValue() : Double.NaN;
+        }
+    }
+}
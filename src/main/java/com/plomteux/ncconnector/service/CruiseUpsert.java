@@ -0,0 +1,126 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.DestinationCodeEntity;
+import com.plomteux.ncconnector.entity.PortsOfCallEntity;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** Upserts cruises by code, so that a stored cruise keeps its id and only its sailings accumulate history. */
+@Component
+@RequiredArgsConstructor
+public class CruiseUpsert {
+    private final CruiseDetailsRepository cruiseDetailsRepository;
+
+    public record Upserted(List<CruiseDetailsEntity> cruises, int newCruises, int destinationLinks, int portOfCallLinks) {
+    }
+
+    // cruises repeating a code of the same list hand their sailings to the first one
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Upserted updateStored(List<CruiseDetailsEntity> cruises) {
+        Set<String> codes = cruises.stream()
+                .map(CruiseDetailsEntity::getCode)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, CruiseDetailsEntity> stored = codes.isEmpty() ? Map.of() : cruiseDetailsRepository.findByCodeIn(codes).stream()
+                .collect(Collectors.toMap(CruiseDetailsEntity::getCode, Function.identity()));
+        if (!stored.isEmpty()) {
+            List<Long> ids = stored.values().stream().map(CruiseDetailsEntity::getId).toList();
+            cruiseDetailsRepository.fetchDestinations(ids);
+            cruiseDetailsRepository.fetchPortsOfCall(ids);
+        }
+
+        Map<String, CruiseDetailsEntity> firstByCode = new HashMap<>();
+        List<CruiseDetailsEntity> toWrite = new ArrayList<>(cruises.size());
+        int newCruises = 0;
+        int destinationLinks = 0;
+        int portOfCallLinks = 0;
+        for (CruiseDetailsEntity cruise : cruises) {
+            CruiseDetailsEntity first = cruise.getCode() != null ? firstByCode.putIfAbsent(cruise.getCode(), cruise) : null;
+            if (first != null) {
+                moveSailings(cruise, first, stored.getOrDefault(first.getCode(), first));
+                continue;
+            }
+            CruiseDetailsEntity current = stored.get(cruise.getCode());
+            if (current != null) {
+                if (updateDestinations(current, cruise)) {
+                    destinationLinks += size(cruise.getDestinationsEntities());
+                }
+                if (updatePortsOfCall(current, cruise)) {
+                    portOfCallLinks += size(cruise.getPortsOfCallEntities());
+                }
+                update(current, cruise);
+                cruise.setId(current.getId());
+                sailings(cruise).forEach(sailing -> sailing.setCruiseDetailsEntity(current));
+            } else {
+                newCruises++;
+                destinationLinks += size(cruise.getDestinationsEntities());
+                portOfCallLinks += size(cruise.getPortsOfCallEntities());
+            }
+            toWrite.add(cruise);
+        }
+        return new Upserted(toWrite, newCruises, destinationLinks, portOfCallLinks);
+    }
+
+    private static void update(CruiseDetailsEntity current, CruiseDetailsEntity snapshot) {
+        current.setBundleType(snapshot.getBundleType());
+        current.setShipCode(snapshot.getShipCode());
+        current.setDuration(snapshot.getDuration());
+        current.setGuestCount(snapshot.getGuestCount());
+        current.setEmbarkationPortCode(snapshot.getEmbarkationPortCode());
+    }
+
+    // replacing a link collection rewrites all its rows, so only do it when the codes changed
+    private static boolean updateDestinations(CruiseDetailsEntity current, CruiseDetailsEntity snapshot) {
+        if (codes(current.getDestinationsEntities(), DestinationCodeEntity::getDestinationCode)
+                .equals(codes(snapshot.getDestinationsEntities(), DestinationCodeEntity::getDestinationCode))) {
+            return false;
+        }
+        current.setDestinationsEntities(new ArrayList<>(snapshot.getDestinationsEntities()));
+        return true;
+    }
+
+    private static boolean updatePortsOfCall(CruiseDetailsEntity current, CruiseDetailsEntity snapshot) {
+        if (codes(current.getPortsOfCallEntities(), PortsOfCallEntity::getPortsOfCall)
+                .equals(codes(snapshot.getPortsOfCallEntities(), PortsOfCallEntity::getPortsOfCall))) {
+            return false;
+        }
+        current.setPortsOfCallEntities(new ArrayList<>(snapshot.getPortsOfCallEntities()));
+        return true;
+    }
+
+    private static int size(List<?> entries) {
+        return entries != null ? entries.size() : 0;
+    }
+
+    private static void moveSailings(CruiseDetailsEntity from, CruiseDetailsEntity to, CruiseDetailsEntity parent) {
+        List<SailingsEntity> sailings = new ArrayList<>(sailings(to));
+        sailings(from).forEach(sailing -> {
+            sailing.setCruiseDetailsEntity(parent);
+            sailings.add(sailing);
+        });
+        to.setSailingsEntities(sailings);
+        from.setSailingsEntities(new ArrayList<>());
+    }
+
+    private static List<SailingsEntity> sailings(CruiseDetailsEntity cruise) {
+        return cruise.getSailingsEntities() != null ? cruise.getSailingsEntities() : List.of();
+    }
+
+    private static <T> List<String> codes(List<T> entries, Function<T, String> code) {
+        return entries == null ? List.of() : entries.stream().map(code).sorted().toList();
+    }
+}
@@ -0,0 +1,160 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.model.IngestJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Runs ingests as background jobs, one at a time; a submit while one is pending returns that job. */
+@Service
+@Slf4j
+public class IngestJobService {
+    private final NCService ncService;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ingest-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, JobState> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JobState> eldest) {
+            return size() > JOBS_HISTORY;
+        }
+    };
+    private JobState active;
+
+    @Value("${ncl.ingest.jobs.history:20}")
+    private Integer JOBS_HISTORY;
+
+    public IngestJobService(NCService ncService) {
+        this.ncService = ncService;
+    }
+
+    public synchronized IngestJob submit(IngestJob.TriggerEnum trigger) {
+        if (active != null) {
+            log.info("Ingest job {} is still {}, not starting a {} ingest", active.jobId, active.status, trigger);
+            return active.toIngestJob();
+        }
+        JobState job = new JobState(UUID.randomUUID().toString(), trigger);
+        jobs.put(job.jobId, job);
+        active = job;
+        executor.execute(() -> run(job));
+        log.info("Ingest job {} submitted by {} trigger", job.jobId, trigger);
+        return job.toIngestJob();
+    }
+
+    public synchronized Optional<IngestJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(JobState::toIngestJob);
+    }
+
+    private void run(JobState job) {
+        job.started();
+        IngestJob.StatusEnum result = IngestJob.StatusEnum.FAILED;
+        try {
+            ResponseEntity<IngestReport> response = ncService.ingestCruisesDetails(job);
+            IngestReport report = response.getBody();
+            if (report != null) {
+                job.processed(report.getCruises(), report.getSailings());
+            }
+            if (response.getStatusCode().is2xxSuccessful()) {
+                result = IngestJob.StatusEnum.SUCCEEDED;
+            } else {
+                job.error("Ingest ended with status " + response.getStatusCode().value());
+            }
+        } catch (RuntimeException e) {
+            log.error("Ingest job {} failed: {}", job.jobId, e.getMessage(), e);
+            job.error(e.getMessage());
+        } finally {
+            synchronized (this) {
+                job.finished(result);
+                active = null;
+            }
+            log.info("Ingest job {} {}", job.jobId, result);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // written by the ingest thread, read by status requests
+    private static final class JobState implements IngestProgress {
+        private final String jobId;
+        private final IngestJob.TriggerEnum trigger;
+        private final OffsetDateTime submittedAt = OffsetDateTime.now();
+        private final List<String> errors = new ArrayList<>();
+        private volatile IngestJob.StatusEnum status = IngestJob.StatusEnum.QUEUED;
+        private volatile IngestJob.PhaseEnum phase = IngestJob.PhaseEnum.QUEUED;
+        private volatile OffsetDateTime startedAt;
+        private volatile OffsetDateTime finishedAt;
+        private volatile long startNanos;
+        private volatile long finishNanos;
+        private volatile int cruises;
+        private volatile int sailings;
+
+        private JobState(String jobId, IngestJob.TriggerEnum trigger) {
+            this.jobId = jobId;
+            this.trigger = trigger;
+        }
+
+        void started() {
+            startNanos = System.nanoTime();
+            startedAt = OffsetDateTime.now();
+            status = IngestJob.StatusEnum.RUNNING;
+        }
+
+        synchronized void finished(IngestJob.StatusEnum result) {
+            finishNanos = System.nanoTime();
+            finishedAt = OffsetDateTime.now();
+            phase = IngestJob.PhaseEnum.DONE;
+            status = result;
+        }
+
+        synchronized void error(String message) {
+            errors.add(message);
+        }
+
+        @Override
+        public void phase(IngestJob.PhaseEnum phase) {
+            this.phase = phase;
+        }
+
+        @Override
+        public void processed(int cruises, int sailings) {
+            this.cruises = cruises;
+            this.sailings = sailings;
+        }
+
+        synchronized IngestJob toIngestJob() {
+            IngestJob ingestJob = new IngestJob()
+                    .jobId(jobId)
+                    .trigger(trigger)
+                    .status(status)
+                    .phase(phase)
+                    .submittedAt(submittedAt)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .cruisesProcessed(cruises)
+                    .sailingsProcessed(sailings)
+                    .errors(List.copyOf(errors));
+            if (startedAt != null) {
+                long elapsedMillis = Math.max(((finishedAt != null ? finishNanos : System.nanoTime()) - startNanos) / 1_000_000, 1);
+                ingestJob.cruisesPerSecond(cruises * 1000d / elapsedMillis);
+            }
+            return ingestJob;
+        }
+    }
+}
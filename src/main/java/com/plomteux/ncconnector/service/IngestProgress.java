@@ -0,0 +1,14 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.model.IngestJob;
+
+interface IngestProgress {
+    IngestProgress NONE = new IngestProgress() {
+    };
+
+    default void phase(IngestJob.PhaseEnum phase) {
+    }
+
+    default void processed(int cruises, int sailings) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.plomteux.ncconnector.service;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@Builder
+@ToString
+public class IngestReport {
+    private final String mode;
+    private final int cruises;
+    private final int sailings;
+    private final int chunks;
+    private final int unchangedSailings;
+    private final int closedSailings;
+    private final int carriedForwardSailings;
+    private final long durationMillis;
+    private final long peakHeapBytes;
+    private final double cruisesPerSecond;
+}
@@ -0,0 +1,94 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.model.IngestJob;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Objects;
+
+class IngestRun {
+    private final String mode;
+    private final SailingsDelta delta;
+    private final IngestProgress progress;
+    private final long startNanos;
+    private int cruises;
+    private int sailings;
+    private int chunks;
+    private int closedSailings;
+    private int carriedForwardSailings;
+
+    private IngestRun(String mode, SailingsDelta delta, IngestProgress progress) {
+        this.mode = mode;
+        this.delta = delta;
+        this.progress = progress;
+        heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+        this.startNanos = System.nanoTime();
+    }
+
+    static IngestRun start(String mode, SailingsDelta delta) {
+        return start(mode, delta, IngestProgress.NONE);
+    }
+
+    static IngestRun start(String mode, SailingsDelta delta, IngestProgress progress) {
+        return new IngestRun(mode, delta, progress);
+    }
+
+    IngestProgress getProgress() {
+        return progress;
+    }
+
+    void phase(IngestJob.PhaseEnum phase) {
+        progress.phase(phase);
+    }
+
+    SailingsDelta getDelta() {
+        return delta;
+    }
+
+    void sailingsClosed(int count) {
+        closedSailings = count;
+    }
+
+    void sailingsCarriedForward(int count) {
+        carriedForwardSailings = count;
+    }
+
+    void chunkProcessed(List<CruiseDetails> chunk) {
+        chunks++;
+        cruises += chunk.size();
+        sailings += chunk.stream()
+                .map(CruiseDetails::getSailings)
+                .filter(Objects::nonNull)
+                .mapToInt(List::size)
+                .sum();
+        progress.processed(cruises, sailings);
+    }
+
+    IngestReport finish() {
+        long durationMillis = Math.max((System.nanoTime() - startNanos) / 1_000_000, 1);
+        long peakHeapBytes = heapPools().stream()
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+        return IngestReport.builder()
+                .mode(mode)
+                .cruises(cruises)
+                .sailings(sailings)
+                .chunks(chunks)
+                .unchangedSailings(delta != null ? delta.getUnchanged() : 0)
+                .closedSailings(closedSailings)
+                .carriedForwardSailings(carriedForwardSailings)
+                .durationMillis(durationMillis)
+                .peakHeapBytes(peakHeapBytes)
+                .cruisesPerSecond(cruises * 1000d / durationMillis)
+                .build();
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+                .toList();
+    }
+}
@@ -1,11 +1,27 @@
 package com.plomteux.ncconnector.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.Prices;
+import com.plomteux.ncconnector.entity.SailingsEntity;
 import com.plomteux.ncconnector.mapper.CruiseDetailsMapper;
 import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.model.IngestJob;
+import com.plomteux.ncconnector.model.Pricing;
 import com.plomteux.ncconnector.model.Sailings;
 import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.SnapshotBulkLoader;
+import com.plomteux.ncconnector.repository.UpstreamSnapshotRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
@@ -15,22 +31,49 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 
 @Service
 @AllArgsConstructor
 @Slf4j
 public class NCService {
+    private static final String STAGE_TIMER = "ncl.ingest.stage";
 
     private final RestTemplate restTemplate;
     private final CruiseDetailsMapper cruiseDetailsMapper;
     private final CruiseDetailsRepository cruiseDetailsRepository;
+    private final CodeDictionary codeDictionary;
+    private final CruiseUpsert cruiseUpsert;
+    private final SailingsRepository sailingsRepository;
+    private final ObjectMapper objectMapper;
+    private final SnapshotBulkLoader snapshotBulkLoader;
+    private final PriceDropService priceDropService;
+    private final PriceDropRepository priceDropRepository;
+    private final CruiseSnapshotIndex cruiseSnapshotIndex;
+    private final CruiseCatalogService cruiseCatalogService;
+    private final UpstreamSnapshotRepository upstreamSnapshotRepository;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicReference<IngestReport> lastReport = new AtomicReference<>();
 
     @Value("${ncl.api.endpoint.itinaries}")
     private String NCL_API_ENDPOINT_ITINARIES;
@@ -41,19 +84,220 @@ public class NCService {
     @Value("${ncl.api.endpoint.prices}")
     private String NCL_API_ENDPOINT_PRICES;
 
+    @Value("${ncl.prices.batch-size:100}")
+    private Integer PRICES_BATCH_SIZE;
+
+    @Value("${ncl.prices.parallelism:4}")
+    private Integer PRICES_PARALLELISM;
+
+    @Value("${ncl.prices.max-attempts:3}")
+    private Integer PRICES_MAX_ATTEMPTS;
+
+    @Value("${ncl.prices.retry-backoff-ms:500}")
+    private Long PRICES_RETRY_BACKOFF_MS;
+
+    @Value("${ncl.ingest.streaming:false}")
+    private Boolean STREAMING_INGEST;
+
+    @Value("${ncl.ingest.chunk-size:200}")
+    private Integer INGEST_CHUNK_SIZE;
+
+    @Value("${ncl.ingest.bulk-load:false}")
+    private Boolean BULK_LOAD;
+
+    @Value("${ncl.ingest.delta:false}")
+    private Boolean DELTA_INGEST;
+
+    @Value("${ncl.price-drops.enabled:true}")
+    private Boolean PRICE_DROPS;
+
+    @Value("${ncl.ingest.fingerprint.enabled:false}")
+    private Boolean FINGERPRINT;
+
+    @Value("${ncl.ingest.fingerprint.verify-prices:true}")
+    private Boolean FINGERPRINT_VERIFY_PRICES;
+
+    public ResponseEntity<IngestReport> ingestCruisesDetails() {
+        return ingestCruisesDetails(IngestProgress.NONE);
+    }
+
+    ResponseEntity<IngestReport> ingestCruisesDetails(IngestProgress progress) {
+        if (Boolean.TRUE.equals(STREAMING_INGEST)) {
+            return streamAllCruisesDetails(progress);
+        }
+        if (Boolean.TRUE.equals(FINGERPRINT)) {
+            return ingestChangedCruisesDetails(progress);
+        }
+        IngestRun run = startRun("materialized", progress);
+        ResponseEntity<List<CruiseDetails>> response = getAllCruisesDetails(run);
+        return ResponseEntity.status(response.getStatusCode())
+                .body(finishRun(run, response.getStatusCode().is2xxSuccessful()));
+    }
+
+    public ResponseEntity<IngestReport> streamAllCruisesDetails() {
+        return streamAllCruisesDetails(IngestProgress.NONE);
+    }
+
+    private ResponseEntity<IngestReport> streamAllCruisesDetails(IngestProgress progress) {
+        IngestRun run = startRun("streaming", progress);
+        try {
+            run.phase(IngestJob.PhaseEnum.FETCHING_ITINERARIES);
+            restTemplate.execute(
+                    this.NCL_API_ENDPOINT_ITINARIES,
+                    HttpMethod.GET,
+                    request -> request.getHeaders().setContentType(MediaType.APPLICATION_JSON),
+                    response -> {
+                        ingestStream(response.getBody(), run);
+                        return null;
+                    }
+            );
+        } catch (HttpClientErrorException e) {
+            HttpStatusCode statusCode = e.getStatusCode();
+            log.warn("HTTP client error occurred while streaming cruise details: {} - {}", statusCode, e.getMessage());
+            return ResponseEntity.status(statusCode).body(finishRun(run, false));
+        } catch (HttpServerErrorException e) {
+            HttpStatusCode statusCode = e.getStatusCode();
+            log.error("HTTP server error occurred while streaming cruise details: {} - {}", statusCode, e.getMessage(), e);
+            return ResponseEntity.status(statusCode).body(finishRun(run, false));
+        } catch (Exception e) {
+            log.error("An error occurred while streaming cruise details: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(finishRun(run, false));
+        }
+        return ResponseEntity.ok(finishRun(run, true));
+    }
+
+    // with verify-prices the request is never conditional, as the cruise codes to price come from the body
+    public ResponseEntity<IngestReport> ingestChangedCruisesDetails() {
+        return ingestChangedCruisesDetails(IngestProgress.NONE);
+    }
+
+    private ResponseEntity<IngestReport> ingestChangedCruisesDetails(IngestProgress progress) {
+        LocalDate today = LocalDate.now();
+        UpstreamFingerprint fingerprint = UpstreamFingerprint.load(upstreamSnapshotRepository);
+        IngestRun check = IngestRun.start("fingerprint", null, progress);
+        boolean verifyPrices = Boolean.TRUE.equals(FINGERPRINT_VERIFY_PRICES);
+        List<CruiseDetails> cruiseDetailsList = null;
+        Map<String, BigDecimal> totalPriceMap = null;
+        boolean unchanged;
+        try {
+            check.phase(IngestJob.PhaseEnum.FETCHING_ITINERARIES);
+            ResponseEntity<byte[]> response = stageTimer("fetch_itineraries").record(() -> restTemplate.exchange(
+                    this.NCL_API_ENDPOINT_ITINARIES,
+                    HttpMethod.GET,
+                    new HttpEntity<>(fingerprint.requestHeaders(!verifyPrices)),
+                    byte[].class
+            ));
+            unchanged = fingerprint.itinerariesUnchanged(response);
+            if (!unchanged || verifyPrices) {
+                cruiseDetailsList = objectMapper.readValue(response.getBody(), new TypeReference<>() {
+                });
+                check.phase(IngestJob.PhaseEnum.FETCHING_PRICES);
+                totalPriceMap = fetchTotalPrices(cruiseDetailsList);
+                unchanged = fingerprint.pricesUnchanged(totalPriceMap) && unchanged;
+            }
+        } catch (HttpClientErrorException e) {
+            HttpStatusCode statusCode = e.getStatusCode();
+            log.warn("HTTP client error occurred while retrieving cruise details: {} - {}", statusCode, e.getMessage());
+            return ResponseEntity.status(statusCode).body(finishRun(check, false));
+        } catch (HttpServerErrorException e) {
+            HttpStatusCode statusCode = e.getStatusCode();
+            log.error("HTTP server error occurred while retrieving cruise details: {} - {}", statusCode, e.getMessage(), e);
+            return ResponseEntity.status(statusCode).body(finishRun(check, false));
+        } catch (Exception e) {
+            log.error("An error occurred while retrieving cruise details: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(finishRun(check, false));
+        }
+        if (unchanged) {
+            check.sailingsCarriedForward(fingerprint.carryForward(sailingsRepository, today));
+            upstreamSnapshotRepository.save(fingerprint.toEntity(today, true));
+            return ResponseEntity.ok(finishRun(check, true));
+        }
+        IngestRun run = startRun("fingerprint", progress);
+        run.phase(IngestJob.PhaseEnum.PERSISTING);
+        applyTotalPrices(cruiseDetailsList, totalPriceMap);
+        saveCruiseDetailsListInDataBase(cruiseDetailsList, run);
+        run.chunkProcessed(cruiseDetailsList);
+        IngestReport report = finishRun(run, true);
+        upstreamSnapshotRepository.save(fingerprint.toEntity(today, false));
+        return ResponseEntity.ok(report);
+    }
+
+    // persisted chunk by chunk, so that only one chunk of cruises is held in memory
+    void ingestStream(InputStream body, IngestRun run) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalStateException("Expected a JSON array of cruise details");
+            }
+            List<CruiseDetails> chunk = new ArrayList<>(INGEST_CHUNK_SIZE);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                chunk.add(objectMapper.readValue(parser, CruiseDetails.class));
+                if (chunk.size() >= INGEST_CHUNK_SIZE) {
+                    processChunk(chunk, run);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(chunk, run);
+            }
+        }
+    }
+
+    private void processChunk(List<CruiseDetails> chunk, IngestRun run) {
+        run.phase(IngestJob.PhaseEnum.FETCHING_PRICES);
+        Map<String, BigDecimal> totalPriceMap = fetchTotalPrices(chunk);
+        run.phase(IngestJob.PhaseEnum.PERSISTING);
+        applyTotalPrices(chunk, totalPriceMap);
+        saveCruiseDetailsListInDataBase(chunk, run);
+        run.phase(IngestJob.PhaseEnum.FETCHING_ITINERARIES);
+        run.chunkProcessed(chunk);
+    }
+
+    private IngestRun startRun(String mode, IngestProgress progress) {
+        SailingsDelta delta = Boolean.TRUE.equals(DELTA_INGEST) ? SailingsDelta.load(sailingsRepository) : null;
+        return IngestRun.start(mode, delta, progress);
+    }
+
+    private IngestReport finishRun(IngestRun run, boolean completed) {
+        run.phase(IngestJob.PhaseEnum.FINISHING);
+        stageTimer("finish").record(() -> {
+            if (completed && run.getDelta() != null) {
+                run.sailingsClosed(transactionTemplate.execute(status ->
+                        run.getDelta().finish(sailingsRepository, priceDropRepository, LocalDate.now())));
+            }
+            cruiseSnapshotIndex.rebuild();
+            cruiseCatalogService.evictAll();
+            cruiseCatalogService.getDestinationCodes();
+        });
+        IngestReport report = run.finish();
+        recordLastRun(report);
+        log.info("{} ingest: {} cruises, {} sailings ({} unchanged, {} closed, {} carried forward) in {} chunk(s), {} ms, {} cruises/s, peak heap {} MB",
+                report.getMode(), report.getCruises(), report.getSailings(), report.getUnchangedSailings(),
+                report.getClosedSailings(), report.getCarriedForwardSailings(), report.getChunks(), report.getDurationMillis(),
+                String.format("%.1f", report.getCruisesPerSecond()), report.getPeakHeapBytes() / (1024 * 1024));
+        return report;
+    }
+
     public ResponseEntity<List<CruiseDetails>> getAllCruisesDetails() {
+        IngestRun run = startRun("materialized", IngestProgress.NONE);
+        ResponseEntity<List<CruiseDetails>> response = getAllCruisesDetails(run);
+        finishRun(run, response.getStatusCode().is2xxSuccessful());
+        return response;
+    }
+
+    private ResponseEntity<List<CruiseDetails>> getAllCruisesDetails(IngestRun run) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         HttpEntity<String> entity = new HttpEntity<>(headers);
         ResponseEntity<List<CruiseDetails>> cruiseDetailsResponse;
         try {
-            cruiseDetailsResponse = restTemplate.exchange(
+            run.phase(IngestJob.PhaseEnum.FETCHING_ITINERARIES);
+            cruiseDetailsResponse = stageTimer("fetch_itineraries").record(() -> restTemplate.exchange(
                     this.NCL_API_ENDPOINT_ITINARIES,
                     HttpMethod.GET,
                     entity,
-                    new ParameterizedTypeReference<>() {
+                    new ParameterizedTypeReference<List<CruiseDetails>>() {
                     }
-            );
+            ));
         } catch (HttpClientErrorException e) {
             HttpStatusCode statusCode = e.getStatusCode();
             log.warn("HTTP client error occurred while retrieving cruise details: {} - {}", statusCode, e.getMessage());
@@ -67,45 +311,202 @@ public class NCService {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
         List<CruiseDetails> cruiseDetailsList = Objects.requireNonNull(cruiseDetailsResponse.getBody());
+        run.phase(IngestJob.PhaseEnum.FETCHING_PRICES);
         Map<String, BigDecimal> totalPriceMap = fetchTotalPrices(cruiseDetailsList);
+        run.phase(IngestJob.PhaseEnum.PERSISTING);
+        applyTotalPrices(cruiseDetailsList, totalPriceMap);
+        saveCruiseDetailsListInDataBase(cruiseDetailsList, run);
+        run.chunkProcessed(cruiseDetailsList);
+        return cruiseDetailsResponse;
+    }
+
+    void applyTotalPrices(List<CruiseDetails> cruiseDetailsList, Map<String, BigDecimal> totalPriceMap) {
         for (CruiseDetails cruiseDetails : cruiseDetailsList) {
             BigDecimal totalPrice = totalPriceMap.getOrDefault(cruiseDetails.getCode(), BigDecimal.ZERO);
             setTotalPrice(cruiseDetails, totalPrice);
         }
-        saveCruiseDetailsListInDataBase(cruiseDetailsList);
-        return cruiseDetailsResponse;
     }
 
     void saveCruiseDetailsListInDataBase(List<CruiseDetails> cruiseDetailsList) {
-        List<CruiseDetailsEntity> entities = cruiseDetailsList.stream()
+        saveCruiseDetailsListInDataBase(cruiseDetailsList, null);
+    }
+
+    void saveCruiseDetailsListInDataBase(List<CruiseDetails> cruiseDetailsList, IngestRun run) {
+        List<CruiseDetailsEntity> entities = stageTimer("map").record(() -> cruiseDetailsList.stream()
                 .map(cruiseDetailsMapper::toCruiseDetailsEntity)
+                .toList());
+        meterRegistry.counter("ncl.ingest.cruises.mapped").increment(entities.size());
+        meterRegistry.counter("ncl.ingest.sailings.mapped").increment(count(entities, CruiseDetailsEntity::getSailingsEntities));
+        Map<SailingPrices.Key, SailingPrices> previousPrices = run != null && Boolean.TRUE.equals(PRICE_DROPS)
+                ? previousPrices(entities, run)
+                : null;
+        if (run != null && run.getDelta() != null) {
+            run.getDelta().apply(entities);
+        }
+        // one transaction, so that a failed insert leaves no stored cruise updated without its sailings
+        CruiseUpsert.Upserted written = stageTimer("write").record(() -> transactionTemplate.execute(status -> {
+            codeDictionary.intern(entities);
+            CruiseUpsert.Upserted upserted = cruiseUpsert.updateStored(entities);
+            List<CruiseDetailsEntity> cruises = upserted.cruises();
+            if (Boolean.TRUE.equals(BULK_LOAD) && snapshotBulkLoader.isSupported()) {
+                // the COPY bypasses the session, so newly interned codes must reach the database before it
+                cruiseDetailsRepository.flush();
+                snapshotBulkLoader.load(cruises);
+            } else {
+                List<SailingsEntity> newSailingsOfStoredCruises = cruises.stream()
+                        .filter(cruise -> cruise.getId() != null && cruise.getSailingsEntities() != null)
+                        .flatMap(cruise -> cruise.getSailingsEntities().stream())
+                        .toList();
+                cruiseDetailsRepository.saveAllAndFlush(cruises.stream().filter(cruise -> cruise.getId() == null).toList());
+                if (!newSailingsOfStoredCruises.isEmpty()) {
+                    sailingsRepository.saveAllAndFlush(newSailingsOfStoredCruises);
+                }
+            }
+            return upserted;
+        }));
+        rowsWritten("cruise_details", written.newCruises());
+        rowsWritten("sailings", count(entities, CruiseDetailsEntity::getSailingsEntities));
+        rowsWritten("cruise_destination", written.destinationLinks());
+        rowsWritten("cruise_port_of_call", written.portOfCallLinks());
+        if (previousPrices != null) {
+            rowsWritten("price_drop", stageTimer("price_drops").record(() -> transactionTemplate.execute(status ->
+                    priceDropService.recordPriceDrops(entities, previousPrices, LocalDate.now()))));
+        }
+    }
+
+    // without a delta only the chunk's own sailings of the previous day are read, never the whole snapshot
+    private Map<SailingPrices.Key, SailingPrices> previousPrices(List<CruiseDetailsEntity> entities, IngestRun run) {
+        if (run.getDelta() != null) {
+            return run.getDelta().getOpenSailings();
+        }
+        List<SailingsEntity> sailings = entities.stream()
+                .map(CruiseDetailsEntity::getSailingsEntities)
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
                 .toList();
-        cruiseDetailsRepository.saveAllAndFlush(entities);
+        Set<BigDecimal> sailIds = new HashSet<>();
+        Set<BigDecimal> packageIds = new HashSet<>();
+        sailings.forEach(sailing -> {
+            sailIds.add(sailing.getSailId());
+            packageIds.add(sailing.getPackageId());
+        });
+        sailIds.remove(null);
+        packageIds.remove(null);
+        if (sailIds.isEmpty() || packageIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return SailingPrices.byKey(sailingsRepository.findSailingPricesValidOn(LocalDate.now().minusDays(1), sailIds, packageIds));
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder(STAGE_TIMER)
+                .description("Time spent in one stage of an ingest run")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private void rowsWritten(String table, double rows) {
+        meterRegistry.counter("ncl.ingest.rows.written", "table", table).increment(rows);
+    }
+
+    private static int count(List<CruiseDetailsEntity> cruises, Function<CruiseDetailsEntity, List<?>> children) {
+        return cruises.stream()
+                .map(children)
+                .filter(Objects::nonNull)
+                .mapToInt(List::size)
+                .sum();
+    }
+
+    // gauges are registered once against lastReport
+    private void recordLastRun(IngestReport report) {
+        lastReport.set(report);
+        lastRunGauge("ncl.ingest.last.cruises", null, IngestReport::getCruises);
+        lastRunGauge("ncl.ingest.last.sailings", null, IngestReport::getSailings);
+        lastRunGauge("ncl.ingest.last.peak.heap", "bytes", IngestReport::getPeakHeapBytes);
+        TimeGauge.builder("ncl.ingest.last.duration", lastReport, TimeUnit.MILLISECONDS,
+                        last -> last.get().getDurationMillis())
+                .register(meterRegistry);
     }
 
+    private void lastRunGauge(String name, String baseUnit, ToDoubleFunction<IngestReport> value) {
+        Gauge.builder(name, lastReport, last -> value.applyAsDouble(last.get()))
+                .baseUnit(baseUnit)
+                .register(meterRegistry);
+    }
+
+    // each batch is retried on its own, so a failing batch only leaves its cruises without taxes and fees
     protected Map<String, BigDecimal> fetchTotalPrices(List<CruiseDetails> cruiseDetailsList) {
         List<String> cruiseCodes = cruiseDetailsList.stream()
                 .map(CruiseDetails::getCode)
                 .toList();
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < cruiseCodes.size(); from += PRICES_BATCH_SIZE) {
+            batches.add(cruiseCodes.subList(from, Math.min(from + PRICES_BATCH_SIZE, cruiseCodes.size())));
+        }
+        if (batches.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Map<String, BigDecimal> totalPriceMap = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(PRICES_PARALLELISM, batches.size()));
         try {
-            ResponseEntity<JsonNode> response = restTemplate.postForEntity(NCL_API_ENDPOINT_PRICES, cruiseCodes, JsonNode.class);
-            JsonNode pricesNode = Objects.requireNonNull(response.getBody()).get("prices");
-            if (pricesNode != null && pricesNode.isArray()) {
-                return extractTotalPrices(pricesNode);
+            List<Future<?>> futures = batches.stream()
+                    .<Future<?>>map(batch -> executor.submit(() -> totalPriceMap.putAll(fetchTotalPricesBatch(batch))))
+                    .toList();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while fetching total prices, {} of {} cruises priced", totalPriceMap.size(), cruiseCodes.size());
+        } catch (ExecutionException e) {
+            log.error("An error occurred while fetching total prices: {}", e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+            sample.stop(stageTimer("fetch_prices"));
+        }
+        log.debug("Fetched total prices for {} of {} cruises in {} batches", totalPriceMap.size(), cruiseCodes.size(), batches.size());
+        return totalPriceMap;
+    }
+
+    protected Map<String, BigDecimal> fetchTotalPricesBatch(List<String> cruiseCodes) {
+        for (int attempt = 1; attempt <= PRICES_MAX_ATTEMPTS; attempt++) {
+            try {
+                ResponseEntity<JsonNode> response = restTemplate.postForEntity(NCL_API_ENDPOINT_PRICES, cruiseCodes, JsonNode.class);
+                JsonNode pricesNode = Objects.requireNonNull(response.getBody()).get("prices");
+                if (pricesNode != null && pricesNode.isArray()) {
+                    return extractTotalPrices(pricesNode);
+                }
+                return Collections.emptyMap();
+            } catch (HttpServerErrorException e) {
+                String requestBody = cruiseCodes.toString();
+                String errorMessage = String.format("HTTP server error occurred (attempt %d/%d): %s - %s. Request body: %s", attempt, PRICES_MAX_ATTEMPTS, e.getStatusCode(), e.getMessage(), requestBody);
+                log.error(errorMessage, e);
+            } catch (HttpClientErrorException e) {
+                log.warn("HTTP client warning: {} - {}", e.getStatusCode(), e.getMessage());
+                return Collections.emptyMap();
+            } catch (Exception e) {
+                String requestBody = cruiseCodes.toString();
+                String errorMessage = String.format("An error occurred while fetching total prices (attempt %d/%d): %s. Request body: %s", attempt, PRICES_MAX_ATTEMPTS, e.getMessage(), requestBody);
+                log.error(errorMessage, e);
+            }
+            if (attempt < PRICES_MAX_ATTEMPTS && !backOff(attempt)) {
+                break;
             }
-        } catch (HttpServerErrorException e) {
-            String requestBody = cruiseCodes.toString();
-            String errorMessage = String.format("HTTP server error occurred: %s - %s. Request body: %s", e.getStatusCode(), e.getMessage(), requestBody);
-            log.error(errorMessage, e);
-        } catch (HttpClientErrorException e) {
-            log.warn("HTTP client warning");
-        } catch (Exception e) {
-            String requestBody = cruiseCodes.toString();
-            String errorMessage = String.format("An error occurred while fetching total prices: %s. Request body: %s", e.getMessage(), requestBody);
-            log.error(errorMessage, e);
         }
         return Collections.emptyMap();
     }
+
+    private boolean backOff(int attempt) {
+        try {
+            Thread.sleep(PRICES_RETRY_BACKOFF_MS * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     protected Map<String, BigDecimal> extractTotalPrices(JsonNode pricesNode) {
         Map<String, BigDecimal> totalPriceMap = new HashMap<>();
         for (JsonNode priceNode : pricesNode) {
@@ -116,17 +517,17 @@ public class NCService {
         return totalPriceMap;
     }
 
+    // taxes and per-day fees are the same for every sailing of the cruise; the exact sum is rounded once
     private void setTotalPrice(CruiseDetails cruiseDetails, BigDecimal totalPrice) {
-        BigDecimal duration = cruiseDetails.getDuration();
-        BigDecimal fees = duration.multiply(FEES_MULTIPLIER);
+        BigDecimal surcharge = totalPrice.add(cruiseDetails.getDuration().multiply(FEES_MULTIPLIER));
         List<Sailings> sailings = cruiseDetails.getSailings();
         for (Sailings sailing : sailings) {
-            sailing.getPricing().forEach(pricing -> {
+            for (Pricing pricing : sailing.getPricing()) {
                 BigDecimal combinedPrice = pricing.getCombinedPrice();
                 if (combinedPrice != null) {
-                    pricing.setTotalPrice(combinedPrice.add(totalPrice).add(fees));
+                    pricing.setTotalPrice(Prices.toDecimal(Prices.cents(combinedPrice.add(surcharge))));
                 }
-            });
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.plomteux.ncconnector.service;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@AllArgsConstructor
+@ConditionalOnProperty(name = "ncl.price-drops.backfill", havingValue = "true")
+public class PriceDropBackfill implements ApplicationRunner {
+    private final PriceDropService priceDropService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        priceDropService.backfill();
+    }
+}
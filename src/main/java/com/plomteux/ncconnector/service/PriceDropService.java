@@ -0,0 +1,97 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.PriceDropEntity;
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+@Service
+@AllArgsConstructor
+@Slf4j
+public class PriceDropService {
+    private final PriceDropRepository priceDropRepository;
+    private final SailingsRepository sailingsRepository;
+
+    // drops an earlier run of the same day recorded for these sailings are replaced, not repeated
+    int recordPriceDrops(List<CruiseDetailsEntity> cruises, Map<SailingPrices.Key, SailingPrices> previousPrices, LocalDate publishedDate) {
+        List<PriceDropEntity> drops = new ArrayList<>();
+        Set<BigDecimal> sailIds = new HashSet<>();
+        cruises.stream()
+                .map(CruiseDetailsEntity::getSailingsEntities)
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .forEach(sailing -> {
+                    SailingPrices current = SailingPrices.of(sailing);
+                    SailingPrices previous = previousPrices.get(current.key());
+                    if (previous != null) {
+                        sailIds.add(sailing.getSailId());
+                        drops.addAll(priceDrops(previous, current, sailing, publishedDate));
+                    }
+                });
+        sailIds.remove(null);
+        if (!sailIds.isEmpty()) {
+            priceDropRepository.deleteByPublishedDateAndSailIds(publishedDate, sailIds);
+        }
+        priceDropRepository.saveAll(drops);
+        return drops.size();
+    }
+
+    public int backfill() {
+        List<LocalDate> publishedDates = sailingsRepository.findPublishedDates();
+        int total = 0;
+        for (LocalDate day : publishedDates) {
+            priceDropRepository.deleteByPublishedDate(day);
+            Map<SailingPrices.Key, SailingPrices> previous = SailingPrices.byKey(sailingsRepository.findSailingPricesValidOn(day.minusDays(1)));
+            List<PriceDropEntity> drops = new ArrayList<>();
+            if (!previous.isEmpty()) {
+                sailingsRepository.findSailingPricesPublishedOn(day).stream()
+                        .map(SailingPrices::of)
+                        .forEach(current -> {
+                            SailingPrices before = previous.get(current.key());
+                            if (before != null) {
+                                drops.addAll(priceDrops(before, current, sailingsRepository.getReferenceById(current.id()), day));
+                            }
+                        });
+            }
+            priceDropRepository.saveAll(drops);
+            total += drops.size();
+            log.debug("Backfilled {} price drops for {}", drops.size(), day);
+        }
+        log.info("Backfilled {} price drops over {} published days", total, publishedDates.size());
+        return total;
+    }
+
+    private static List<PriceDropEntity> priceDrops(SailingPrices previous, SailingPrices current, SailingsEntity sailing, LocalDate publishedDate) {
+        List<PriceDropEntity> drops = new ArrayList<>();
+        for (RoomType roomType : RoomType.values()) {
+            long oldPrice = previous.price(roomType);
+            long newPrice = current.price(roomType);
+            if (oldPrice != SailingPrices.NO_PRICE && newPrice != SailingPrices.NO_PRICE && newPrice < oldPrice) {
+                PriceDropEntity drop = new PriceDropEntity();
+                drop.setSailingsEntity(sailing);
+                drop.setSailId(current.key().sailId());
+                drop.setRoomType(roomType);
+                drop.setPublishedDate(publishedDate);
+                drop.setOldPrice(oldPrice);
+                drop.setNewPrice(newPrice);
+                drop.setPriceDifference(oldPrice - newPrice);
+                drops.add(drop);
+            }
+        }
+        return drops;
+    }
+}
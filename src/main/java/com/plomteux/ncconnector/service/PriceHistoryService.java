@@ -0,0 +1,169 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.Prices;
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsRollupEntity;
+import com.plomteux.ncconnector.model.PriceHistory;
+import com.plomteux.ncconnector.model.PriceHistorySeries;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.SailingsRollupRepository;
+import jakarta.persistence.Tuple;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/** Downsamples the price history of a sail id into day, week or month buckets. */
+@Service
+@RequiredArgsConstructor
+public class PriceHistoryService {
+    static final int MAX_BUCKETS = 1000;
+
+    private final SailingsRepository sailingsRepository;
+    private final SailingsRollupRepository sailingsRollupRepository;
+
+    // on a day offered by several packages, the last price is the lowest of them
+    @Transactional(readOnly = true)
+    public PriceHistory getPriceHistory(BigDecimal sailId, PriceHistory.BucketEnum bucket, LocalDate from, LocalDate to, RoomType roomType) {
+        List<LocalDate> starts = new ArrayList<>();
+        for (LocalDate start = start(bucket, from); !start.isAfter(to); start = start.plus(1, unit(bucket))) {
+            if (starts.size() == MAX_BUCKETS) {
+                throw new IllegalArgumentException("Price history cannot have more than " + MAX_BUCKETS + " buckets");
+            }
+            starts.add(start);
+        }
+        List<RoomType> roomTypes = roomType != null ? List.of(roomType) : List.of(RoomType.values());
+        Series[] series = new Series[RoomType.values().length];
+        roomTypes.forEach(type -> series[type.ordinal()] = new Series(starts.size()));
+        Buckets buckets = new Buckets(bucket, starts, from, to);
+
+        for (SailingsRollupEntity rollup : sailingsRollupRepository.findBySailIdAndWeekStartBetween(sailId, start(PriceHistory.BucketEnum.WEEK, from), to)) {
+            Series target = series[rollup.getRoomType().ordinal()];
+            if (target != null) {
+                buckets.fold(target, rollup.getWeekStart(), rollup.getLastDate(), rollup.getMinPrice(), rollup.getMaxPrice(), rollup.getLastPrice());
+            }
+        }
+        for (Tuple row : sailingsRepository.findSailingHistory(sailId, from, to)) {
+            SailingPrices prices = SailingPrices.of(row);
+            LocalDate publishedDate = row.get(12, LocalDate.class);
+            LocalDate validTo = row.get(13, LocalDate.class);
+            for (RoomType type : roomTypes) {
+                long price = prices.price(type);
+                if (price != SailingPrices.NO_PRICE) {
+                    buckets.fold(series[type.ordinal()], publishedDate != null ? publishedDate : validTo, validTo, price, price, price);
+                }
+            }
+        }
+
+        PriceHistory history = new PriceHistory()
+                .sailId(sailId)
+                .bucket(bucket)
+                .bucketStarts(starts);
+        for (RoomType type : roomTypes) {
+            Series values = series[type.ordinal()];
+            if (roomType != null || values.hasPrices()) {
+                history.addSeriesItem(values.toModel(type));
+            }
+        }
+        return history;
+    }
+
+    private static LocalDate start(PriceHistory.BucketEnum bucket, LocalDate day) {
+        return switch (bucket) {
+            case DAY -> day;
+            case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> day.withDayOfMonth(1);
+        };
+    }
+
+    private static ChronoUnit unit(PriceHistory.BucketEnum bucket) {
+        return switch (bucket) {
+            case DAY -> ChronoUnit.DAYS;
+            case WEEK -> ChronoUnit.WEEKS;
+            case MONTH -> ChronoUnit.MONTHS;
+        };
+    }
+
+    private record Buckets(PriceHistory.BucketEnum bucket, List<LocalDate> starts, LocalDate from, LocalDate to) {
+        // a row may span many buckets; lastPrice also stands for the last day of a bucket ending before last
+        void fold(Series series, LocalDate first, LocalDate last, long min, long max, long lastPrice) {
+            LocalDate begin = first.isBefore(from) ? from : first;
+            LocalDate end = last.isAfter(to) ? to : last;
+            if (begin.isAfter(end)) {
+                return;
+            }
+            int firstBucket = index(begin);
+            int lastBucket = index(end);
+            for (int i = firstBucket; i <= lastBucket; i++) {
+                LocalDate bucketEnd = i + 1 < starts.size() ? starts.get(i + 1).minusDays(1) : to;
+                series.add(i, min, max, lastPrice, end.isAfter(bucketEnd) ? bucketEnd : end);
+            }
+        }
+
+        private int index(LocalDate day) {
+            return (int) unit(bucket).between(starts.get(0), start(bucket, day));
+        }
+    }
+
+    // NO_PRICE where the bucket has none
+    private static final class Series {
+        private final long[] min;
+        private final long[] max;
+        private final long[] last;
+        private final LocalDate[] lastDay;
+
+        Series(int buckets) {
+            min = new long[buckets];
+            max = new long[buckets];
+            last = new long[buckets];
+            lastDay = new LocalDate[buckets];
+            Arrays.fill(min, SailingPrices.NO_PRICE);
+            Arrays.fill(max, SailingPrices.NO_PRICE);
+            Arrays.fill(last, SailingPrices.NO_PRICE);
+        }
+
+        void add(int bucket, long minPrice, long maxPrice, long lastPrice, LocalDate day) {
+            if (lastDay[bucket] == null) {
+                min[bucket] = minPrice;
+                max[bucket] = maxPrice;
+            } else {
+                min[bucket] = Math.min(min[bucket], minPrice);
+                max[bucket] = Math.max(max[bucket], maxPrice);
+            }
+            if (lastDay[bucket] == null || day.isAfter(lastDay[bucket])
+                    || (day.equals(lastDay[bucket]) && lastPrice < last[bucket])) {
+                last[bucket] = lastPrice;
+                lastDay[bucket] = day;
+            }
+        }
+
+        boolean hasPrices() {
+            return Arrays.stream(lastDay).anyMatch(Objects::nonNull);
+        }
+
+        PriceHistorySeries toModel(RoomType roomType) {
+            return new PriceHistorySeries()
+                    .roomType(roomType.name())
+                    .min(decimals(min))
+                    .max(decimals(max))
+                    .last(decimals(last));
+        }
+
+        private static List<BigDecimal> decimals(long[] cents) {
+            List<BigDecimal> decimals = new ArrayList<>(cents.length);
+            for (long value : cents) {
+                decimals.add(value != SailingPrices.NO_PRICE ? Prices.toDecimal(value) : null);
+            }
+            return decimals;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import jakarta.persistence.Tuple;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Prices of a sailing row in cents, indexed by RoomType ordinal, NO_PRICE for a room type not offered. */
+record SailingPrices(Long id, Key key, long[] prices) {
+    static final long NO_PRICE = Long.MIN_VALUE;
+
+    static SailingPrices of(SailingsEntity sailing) {
+        long[] prices = new long[RoomType.values().length];
+        for (RoomType roomType : RoomType.values()) {
+            prices[roomType.ordinal()] = orNoPrice(roomType.price(sailing));
+        }
+        return new SailingPrices(sailing.getId(), Key.of(sailing), prices);
+    }
+
+    static SailingPrices of(Tuple row) {
+        long[] prices = new long[RoomType.values().length];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = orNoPrice(row.get(4 + i, Long.class));
+        }
+        Key key = new Key(row.get(1, BigDecimal.class), row.get(2, String.class), row.get(3, BigDecimal.class));
+        return new SailingPrices(row.get(0, Long.class), key, prices);
+    }
+
+    static Map<Key, SailingPrices> byKey(Collection<Tuple> rows) {
+        Map<Key, SailingPrices> byKey = new HashMap<>(rows.size() * 2);
+        rows.forEach(row -> {
+            SailingPrices prices = of(row);
+            byKey.put(prices.key(), prices);
+        });
+        return byKey;
+    }
+
+    long price(RoomType roomType) {
+        return prices[roomType.ordinal()];
+    }
+
+    boolean samePrices(SailingPrices other) {
+        return Arrays.equals(prices, other.prices);
+    }
+
+    private static long orNoPrice(Long cents) {
+        return cents != null ? cents : NO_PRICE;
+    }
+
+    // identity of a sailing across snapshots
+    record Key(BigDecimal sailId, String bundleType, BigDecimal packageId) {
+        Key {
+            sailId = sailId == null ? null : sailId.stripTrailingZeros();
+            packageId = packageId == null ? null : packageId.stripTrailingZeros();
+        }
+
+        static Key of(SailingsEntity sailing) {
+            return new Key(sailing.getSailId(), sailing.getBundleType(), sailing.getPackageId());
+        }
+    }
+}
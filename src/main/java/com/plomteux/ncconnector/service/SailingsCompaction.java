@@ -0,0 +1,169 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsRollupEntity;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsPartitions;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.SailingsRollupRepository;
+import jakarta.persistence.Tuple;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Rolls sailing rows past the retention age up into weekly rollups, then deletes them a month at a time. */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SailingsCompaction {
+    private static final int SAIL_IDS_PER_PAGE = 200;
+
+    private final SailingsRepository sailingsRepository;
+    private final SailingsRollupRepository sailingsRollupRepository;
+    private final PriceDropRepository priceDropRepository;
+    private final SailingsPartitions sailingsPartitions;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${ncl.sailings.retention-days:365}")
+    private int RETENTION_DAYS;
+
+    public int compact(LocalDate today) {
+        sailingsPartitions.ensureMonthsAhead(today);
+        LocalDate cutoff = today.minusDays(RETENTION_DAYS);
+        LocalDate oldest = sailingsRepository.findOldestValidTo();
+        int total = 0;
+        for (LocalDate month = oldest != null ? oldest.withDayOfMonth(1) : cutoff;
+             !month.plusMonths(1).isAfter(cutoff); month = month.plusMonths(1)) {
+            total += compactMonth(month, month.plusMonths(1));
+        }
+        sailingsPartitions.dropEmptyMonthsBefore(cutoff);
+        if (total > 0) {
+            log.info("Compacted {} sailing rows whose validity ended before {}", total, cutoff);
+        }
+        return total;
+    }
+
+    // Folding the same rows into a rollup again leaves it unchanged, so a month interrupted between pages is
+    // simply rolled up again.
+    private int compactMonth(LocalDate from, LocalDate to) {
+        int rows = 0;
+        List<BigDecimal> sailIds = sailingsRepository.findSailIdsValidUntil(from, to, null, PageRequest.of(0, SAIL_IDS_PER_PAGE));
+        while (!sailIds.isEmpty()) {
+            List<BigDecimal> page = sailIds;
+            Integer rolledUp = transactionTemplate.execute(status -> rollUpPage(page, from, to));
+            rows += rolledUp != null ? rolledUp : 0;
+            sailIds = page.size() < SAIL_IDS_PER_PAGE ? List.of()
+                    : sailingsRepository.findSailIdsValidUntil(from, to, page.get(page.size() - 1), PageRequest.of(0, SAIL_IDS_PER_PAGE));
+        }
+        boolean rolledUp = rows > 0;
+        transactionTemplate.executeWithoutResult(status -> {
+            if (rolledUp) {
+                priceDropRepository.deleteBySailingsValidUntil(from, to);
+            }
+            sailingsRepository.deleteValidUntil(from, to);
+        });
+        log.debug("Rolled up {} sailing rows valid until {} to {}", rows, from, to);
+        return rows;
+    }
+
+    private int rollUpPage(List<BigDecimal> sailIds, LocalDate from, LocalDate to) {
+        List<Tuple> rows = sailingsRepository.findSailingHistoryValidUntil(sailIds, from, to);
+        sailingsRollupRepository.saveAll(rollUp(sailIds, rows));
+        return rows.size();
+    }
+
+    // a row valid for several weeks counts in each of them
+    private List<SailingsRollupEntity> rollUp(List<BigDecimal> sailIds, List<Tuple> rows) {
+        LocalDate firstWeek = LocalDate.MAX;
+        LocalDate lastWeek = LocalDate.MIN;
+        for (Tuple row : rows) {
+            LocalDate validTo = row.get(13, LocalDate.class);
+            LocalDate publishedDate = publishedDate(row);
+            firstWeek = min(firstWeek, weekStart(publishedDate));
+            lastWeek = max(lastWeek, weekStart(validTo));
+        }
+        Map<RollupKey, SailingsRollupEntity> rollups = new HashMap<>();
+        sailingsRollupRepository.findBySailIdInAndWeekStartBetween(sailIds, firstWeek, lastWeek)
+                .forEach(rollup -> rollups.put(RollupKey.of(rollup), rollup));
+
+        Map<RollupKey, SailingsRollupEntity> touched = new HashMap<>();
+        for (Tuple row : rows) {
+            SailingPrices prices = SailingPrices.of(row);
+            LocalDate validTo = row.get(13, LocalDate.class);
+            for (LocalDate week = weekStart(publishedDate(row)); !week.isAfter(validTo); week = week.plusWeeks(1)) {
+                LocalDate lastDay = min(validTo, week.plusDays(6));
+                for (RoomType roomType : RoomType.values()) {
+                    long price = prices.price(roomType);
+                    if (price == SailingPrices.NO_PRICE) {
+                        continue;
+                    }
+                    RollupKey key = new RollupKey(prices.key(), roomType, week);
+                    SailingsRollupEntity rollup = rollups.computeIfAbsent(key, RollupKey::newRollup);
+                    add(rollup, price, lastDay);
+                    touched.put(key, rollup);
+                }
+            }
+        }
+        return List.copyOf(touched.values());
+    }
+
+    private static void add(SailingsRollupEntity rollup, long price, LocalDate day) {
+        if (rollup.getLastDate() == null) {
+            rollup.setMinPrice(price);
+            rollup.setMaxPrice(price);
+        } else {
+            rollup.setMinPrice(Math.min(rollup.getMinPrice(), price));
+            rollup.setMaxPrice(Math.max(rollup.getMaxPrice(), price));
+        }
+        if (rollup.getLastDate() == null || !day.isBefore(rollup.getLastDate())) {
+            rollup.setLastPrice(price);
+            rollup.setLastDate(day);
+        }
+    }
+
+    private static LocalDate publishedDate(Tuple row) {
+        LocalDate publishedDate = row.get(12, LocalDate.class);
+        LocalDate validTo = row.get(13, LocalDate.class);
+        return publishedDate != null && !publishedDate.isAfter(validTo) ? publishedDate : validTo;
+    }
+
+    private static LocalDate weekStart(LocalDate day) {
+        return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private record RollupKey(SailingPrices.Key sailing, RoomType roomType, LocalDate weekStart) {
+        static RollupKey of(SailingsRollupEntity rollup) {
+            return new RollupKey(new SailingPrices.Key(rollup.getSailId(), rollup.getBundleType(), rollup.getPackageId()),
+                    rollup.getRoomType(), rollup.getWeekStart());
+        }
+
+        SailingsRollupEntity newRollup() {
+            SailingsRollupEntity rollup = new SailingsRollupEntity();
+            rollup.setSailId(sailing.sailId());
+            rollup.setBundleType(sailing.bundleType());
+            rollup.setPackageId(sailing.packageId());
+            rollup.setRoomType(roomType);
+            rollup.setWeekStart(weekStart);
+            return rollup;
+        }
+    }
+}
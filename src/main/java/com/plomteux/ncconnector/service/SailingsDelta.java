@@ -0,0 +1,89 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import jakarta.persistence.Tuple;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Change-only ingest state of one run: skips sailings whose prices did not change and closes replaced rows. */
+class SailingsDelta {
+    private static final int CLOSE_BATCH_SIZE = 1000;
+
+    private final Map<SailingPrices.Key, SailingPrices> openSailings;
+    private final Set<Long> kept = new HashSet<>();
+    private final List<Long> duplicates;
+    private int unchanged;
+
+    private SailingsDelta(Map<SailingPrices.Key, SailingPrices> openSailings, List<Long> duplicates) {
+        this.openSailings = openSailings;
+        this.duplicates = duplicates;
+    }
+
+    static SailingsDelta load(SailingsRepository sailingsRepository) {
+        List<Tuple> rows = sailingsRepository.findOpenSailingPrices(SailingsEntity.OPEN_END);
+        Map<SailingPrices.Key, SailingPrices> openSailings = new HashMap<>(rows.size() * 2);
+        List<Long> duplicates = new ArrayList<>();
+        for (Tuple row : rows) {
+            SailingPrices prices = SailingPrices.of(row);
+            SailingPrices duplicate = openSailings.put(prices.key(), prices);
+            if (duplicate != null) {
+                duplicates.add(duplicate.id());
+            }
+        }
+        return new SailingsDelta(openSailings, duplicates);
+    }
+
+    Map<SailingPrices.Key, SailingPrices> getOpenSailings() {
+        return openSailings;
+    }
+
+    void apply(List<CruiseDetailsEntity> cruises) {
+        for (CruiseDetailsEntity cruise : cruises) {
+            if (cruise.getSailingsEntities() == null) {
+                continue;
+            }
+            List<SailingsEntity> changed = new ArrayList<>(cruise.getSailingsEntities().size());
+            for (SailingsEntity sailing : cruise.getSailingsEntities()) {
+                SailingPrices previous = openSailings.get(SailingPrices.Key.of(sailing));
+                if (previous != null && previous.samePrices(SailingPrices.of(sailing))) {
+                    kept.add(previous.id());
+                    unchanged++;
+                    continue;
+                }
+                sailing.setValidTo(SailingsEntity.OPEN_END);
+                changed.add(sailing);
+            }
+            cruise.setSailingsEntities(changed);
+        }
+    }
+
+    // Only called once the whole snapshot was ingested, so that a failed run does not close rows it never saw.
+    // Rows opened earlier the same day, by another run, are deleted instead.
+    int finish(SailingsRepository sailingsRepository, PriceDropRepository priceDropRepository, LocalDate publishedDate) {
+        List<Long> toClose = new ArrayList<>(duplicates);
+        openSailings.values().stream()
+                .map(SailingPrices::id)
+                .filter(id -> !kept.contains(id))
+                .forEach(toClose::add);
+        for (int from = 0; from < toClose.size(); from += CLOSE_BATCH_SIZE) {
+            List<Long> batch = toClose.subList(from, Math.min(from + CLOSE_BATCH_SIZE, toClose.size()));
+            priceDropRepository.deleteBySailingsPublishedOn(batch, publishedDate);
+            sailingsRepository.deleteSailingsPublishedOn(batch, publishedDate);
+            sailingsRepository.closeSailings(batch, publishedDate.minusDays(1));
+        }
+        return toClose.size();
+    }
+
+    int getUnchanged() {
+        return unchanged;
+    }
+}
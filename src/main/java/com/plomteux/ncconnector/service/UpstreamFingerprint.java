@@ -0,0 +1,90 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.UpstreamSnapshotEntity;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.UpstreamSnapshotRepository;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/** Compares upstream payloads with the last loaded snapshot, by validators and by SHA-256 of the bodies. */
+class UpstreamFingerprint {
+    private final UpstreamSnapshotEntity previous;
+    private final UpstreamSnapshotEntity current = new UpstreamSnapshotEntity();
+
+    private UpstreamFingerprint(UpstreamSnapshotEntity previous) {
+        this.previous = previous;
+    }
+
+    static UpstreamFingerprint load(UpstreamSnapshotRepository upstreamSnapshotRepository) {
+        return new UpstreamFingerprint(upstreamSnapshotRepository.findFirstByOrderByPublishedDateDescIdDesc().orElse(null));
+    }
+
+    HttpHeaders requestHeaders(boolean conditional) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (conditional && previous != null) {
+            if (previous.getEtag() != null) {
+                headers.set(HttpHeaders.IF_NONE_MATCH, previous.getEtag());
+            }
+            if (previous.getLastModified() != null) {
+                headers.set(HttpHeaders.IF_MODIFIED_SINCE, previous.getLastModified());
+            }
+        }
+        return headers;
+    }
+
+    boolean itinerariesUnchanged(ResponseEntity<byte[]> response) {
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            if (previous == null) {
+                throw new IllegalStateException("Upstream answered 304 without a previous snapshot");
+            }
+            current.setEtag(previous.getEtag());
+            current.setLastModified(previous.getLastModified());
+            current.setItinerariesHash(previous.getItinerariesHash());
+            current.setPricesHash(previous.getPricesHash());
+            return true;
+        }
+        current.setEtag(response.getHeaders().getETag());
+        current.setLastModified(response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+        current.setItinerariesHash(sha256(Objects.requireNonNull(response.getBody())));
+        return previous != null && current.getItinerariesHash().equals(previous.getItinerariesHash());
+    }
+
+    boolean pricesUnchanged(Map<String, BigDecimal> totalPrices) {
+        StringBuilder canonical = new StringBuilder();
+        new TreeMap<>(totalPrices).forEach((code, amount) ->
+                canonical.append(code).append('=').append(amount.stripTrailingZeros().toPlainString()).append('\n'));
+        current.setPricesHash(sha256(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        return previous != null && current.getPricesHash().equals(previous.getPricesHash());
+    }
+
+    int carryForward(SailingsRepository sailingsRepository, LocalDate day) {
+        return previous.getPublishedDate().isBefore(day) ? sailingsRepository.carryForward(previous.getPublishedDate(), day) : 0;
+    }
+
+    UpstreamSnapshotEntity toEntity(LocalDate day, boolean carriedForward) {
+        current.setPublishedDate(day);
+        current.setCarriedForward(carriedForward);
+        return current;
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
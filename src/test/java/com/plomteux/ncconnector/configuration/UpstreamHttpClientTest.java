@@ -0,0 +1,102 @@
+package com.plomteux.ncconnector.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plomteux.ncconnector.service.IngestReport;
+import com.plomteux.ncconnector.service.NCService;
+import com.plomteux.ncconnector.support.NclApiStub;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs an ingest against {@link NclApiStub} through the real upstream client.
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+class UpstreamHttpClientTest {
+    private static final NclApiStub STUB = new NclApiStub();
+    private static final int CRUISES = 40;
+
+    @Autowired
+    private NCService ncService;
+    @Autowired
+    private RestTemplate restTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry registry) {
+        registry.add("ncl.api.endpoint.itinaries", () -> STUB.url("/itineraries"));
+        registry.add("ncl.api.endpoint.prices", () -> STUB.url("/prices"));
+        registry.add("ncl.prices.batch-size", () -> 2);
+        registry.add("ncl.http.read-timeout", () -> "1s");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        STUB.calls().clear();
+        STUB.itineraries(objectMapper.writeValueAsBytes(SyntheticCatalogue.cruises(CRUISES, 3, 5)));
+    }
+
+    @Test
+    void ingest_reusesPooledGzipConnections() {
+        // Act
+        ResponseEntity<IngestReport> response = ncService.ingestCruisesDetails();
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(CRUISES, response.getBody().getCruises());
+        assertEquals(1 + CRUISES / 2, STUB.calls().size());
+        assertTrue(STUB.calls().stream().allMatch(NclApiStub.Call::gzipped));
+        Set<Integer> connections = STUB.calls().stream().map(NclApiStub.Call::clientPort).collect(Collectors.toSet());
+        assertTrue(connections.size() < STUB.calls().size(), "expected kept-alive connections, got " + connections.size());
+    }
+
+    @Test
+    void ingest_recordsLatencyAndBytesPerCall() {
+        // Act
+        ncService.ingestCruisesDetails();
+
+        // Assert
+        DistributionSummary itineraries = meterRegistry.find(UpstreamMetricsInterceptor.RESPONSE_BYTES).tag("uri", "/itineraries").summary();
+        DistributionSummary prices = meterRegistry.find(UpstreamMetricsInterceptor.REQUEST_BYTES).tag("uri", "/prices").summary();
+        assertTrue(itineraries.totalAmount() > 0);
+        assertTrue(prices.count() >= CRUISES / 2);
+        assertFalse(meterRegistry.find("http.client.requests").timers().isEmpty());
+    }
+
+    @Test
+    void slowUpstream_failsAfterTheReadTimeout() {
+        long start = System.nanoTime();
+
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(STUB.url("/slow"), String.class));
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 4_000);
+    }
+}
@@ -0,0 +1,138 @@
+package com.plomteux.ncconnector.controller;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.mapper.CruiseDetailsMapper;
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.model.CruiseOverView;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.service.CodeDictionary;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Counts the statements behind the endpoints returning {@link CruiseOverView}s. Each call runs in one read-only
+ * transaction, like a request with the persistence context kept open for the view.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "ncl.snapshot-index.enabled=false"
+})
+class NCControllerApiImplQueryCountTest {
+    private static final long QUERIES_PER_PAGE = 3;
+
+    @Autowired
+    private NCControllerApiImpl ncController;
+    @Autowired
+    private CruiseDetailsMapper cruiseDetailsMapper;
+    @Autowired
+    private CruiseDetailsRepository cruiseDetailsRepository;
+    @Autowired
+    private CodeDictionary codeDictionary;
+    @Autowired
+    private SailingsRepository sailingsRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        List<CruiseDetails> snapshot = SyntheticCatalogue.cruises(40, 5, 7);
+        snapshot.forEach(cruise -> cruise.getSailings().forEach(sailing ->
+                sailing.getPricing().forEach(pricing -> pricing.setTotalPrice(pricing.getCombinedPrice()))));
+        List<CruiseDetailsEntity> entities = snapshot.stream().map(cruiseDetailsMapper::toCruiseDetailsEntity).toList();
+        codeDictionary.intern(entities);
+        cruiseDetailsRepository.saveAllAndFlush(entities);
+        // the same sailings over the two previous days, 100.00 dearer, so that every sailing dropped today
+        LocalDate twoDaysAgo = LocalDate.now().minusDays(2);
+        jdbcTemplate.update("INSERT INTO sailings_entity (id, sail_id, bundle_type, package_id, departure_date, return_date, "
+                + "published_date, valid_to, inside, cruise_details_entity_id) "
+                + "SELECT id + 1000000, sail_id, bundle_type, package_id, departure_date, return_date, ?, ?, inside + 10000, "
+                + "cruise_details_entity_id FROM sailings_entity", twoDaysAgo, twoDaysAgo.plusDays(1));
+    }
+
+    @AfterEach
+    void cleanup() {
+        sailingsRepository.deleteAllInBatch();
+        cruiseDetailsRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void findCruise_loadsAPageInConstantQueries() {
+        List<CruiseOverView> page = countQueries(() -> ncController.findCruise(LocalDate.of(2000, 1, 1), LocalDate.of(2100, 1, 1),
+                BigDecimal.valueOf(1_000_000), BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.valueOf(100), "CARIBBEAN", null, null, null).getBody());
+
+        assertTrue(page.size() > 10);
+        assertFalse(page.get(0).getPortsOfCall().isEmpty());
+    }
+
+    @Test
+    void getSailingsPriceDrops_loadsAPageInConstantQueries() {
+        LocalDate today = LocalDate.now();
+        List<CruiseOverView> page = countQueries(() -> ncController.getSailingsPriceDrops(today.minusDays(2), today, BigDecimal.ZERO, "inside", null, null).getBody());
+
+        assertEquals(100, page.size());
+        assertFalse(page.get(0).getDestinationCodes().isEmpty());
+    }
+
+    @Test
+    void getSailingsByDestinationAndDeparture_loadsAPageInConstantQueries() {
+        List<CruiseOverView> page = countQueries(() -> ncController.getSailingsByDestinationAndDeparture(LocalDate.of(2030, 1, 1), "CARIBBEAN").getBody());
+
+        assertFalse(page.isEmpty());
+        assertFalse(page.get(0).getDestinationCodes().isEmpty());
+    }
+
+    @Test
+    void getSailingsPriceDrops_pagesThroughAllRowsOnce() {
+        LocalDate today = LocalDate.now();
+        Set<Long> seen = new HashSet<>();
+        String token = null;
+        do {
+            String pageToken = token;
+            ResponseEntity<List<CruiseOverView>> page = new TransactionTemplate(transactionManager).execute(status ->
+                    ncController.getSailingsPriceDrops(today.minusDays(2), today, BigDecimal.ZERO, "inside", 30, pageToken));
+            page.getBody().forEach(overView -> assertTrue(seen.add(overView.getSailId().longValue())));
+            token = page.getHeaders().getFirst(PageToken.HEADER);
+        } while (token != null);
+
+        assertEquals(200, seen.size());
+    }
+
+    private <T> T countQueries(Supplier<T> call) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        T result = transaction.execute(status -> call.get());
+        assertEquals(QUERIES_PER_PAGE, statistics.getPrepareStatementCount());
+        return result;
+    }
+}
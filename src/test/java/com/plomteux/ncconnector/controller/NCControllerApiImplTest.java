@@ -5,17 +5,31 @@ import com.plomteux.ncconnector.entity.SailingsEntity;
 import com.plomteux.ncconnector.mapper.CruiseDetailsMapper;
 import com.plomteux.ncconnector.mapper.CruiseOverViewMapper;
 import com.plomteux.ncconnector.mapper.SailingsMapper;
+import com.plomteux.ncconnector.model.CruiseFacets;
 import com.plomteux.ncconnector.model.CruiseOverView;
+import com.plomteux.ncconnector.model.FacetCount;
+import com.plomteux.ncconnector.model.IngestJob;
+import com.plomteux.ncconnector.model.PriceDropAnalytics;
+import com.plomteux.ncconnector.model.PriceHistory;
 import com.plomteux.ncconnector.model.Sailings;
+import com.plomteux.ncconnector.entity.RoomType;
 import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.CruiseFacet;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingPriceStats;
 import com.plomteux.ncconnector.repository.SailingsRepository;
-import com.plomteux.ncconnector.service.NCService;
+import com.plomteux.ncconnector.service.CruiseCatalogService;
+import com.plomteux.ncconnector.service.CruiseSnapshotIndex;
+import com.plomteux.ncconnector.service.IngestJobService;
+import com.plomteux.ncconnector.service.PriceHistoryService;
 import jakarta.persistence.Tuple;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
@@ -26,9 +40,12 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -36,7 +53,7 @@ import static org.mockito.Mockito.*;
 @SpringBootTest
 class NCControllerApiImplTest {
     @Mock
-    private NCService nCService;
+    private IngestJobService ingestJobService;
     @Mock
     private CruiseDetailsRepository cruiseDetailsRepository;
     @Mock
@@ -45,6 +62,14 @@ class NCControllerApiImplTest {
     private SailingsRepository sailingsRepository;
     @Mock
     private CruiseOverViewMapper cruiseOverViewMapper;
+    @Mock
+    private PriceDropRepository priceDropRepository;
+    @Mock
+    private CruiseSnapshotIndex cruiseSnapshotIndex;
+    @Mock
+    private CruiseCatalogService cruiseCatalogService;
+    @Mock
+    private PriceHistoryService priceHistoryService;
     @InjectMocks
     private NCControllerApiImpl ncController;
     @Captor
@@ -76,12 +101,12 @@ class NCControllerApiImplTest {
         String departurePort = "DP";
 
         // Mock the findCruise method to throw an exception
-        when(sailingsRepository.findCruise(departureDate, returnDate, destinationCode, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, departurePort))
+        when(sailingsRepository.findCruise(departureDate, returnDate, destinationCode, 100_000L, 50_000L, daysAtSeaMin, daysAtSeaMax, departurePort, null, null, PageRequest.of(0, 101)))
                 .thenThrow(new RuntimeException("Test exception"));
 
         // Act and Assert
         Exception exception = assertThrows(RuntimeException.class, () -> {
-            ncController.findCruise(departureDate, returnDate, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, destinationCode, departurePort);
+            ncController.findCruise(departureDate, returnDate, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, destinationCode, departurePort, null, null);
         });
 
         // Verify that the exception message is correct
@@ -100,10 +125,10 @@ class NCControllerApiImplTest {
         String departurePort = "DP";
 
         // Act
-        ncController.findCruise(departureDate, returnDate, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, destinationCode, departurePort);
+        ncController.findCruise(departureDate, returnDate, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, destinationCode, departurePort, null, null);
 
         // Assert
-        verify(sailingsRepository).findCruise(dateCaptor.capture(), dateCaptor.capture(), anyString(), any(BigDecimal.class), any(BigDecimal.class), any(BigDecimal.class), any(BigDecimal.class), anyString());
+        verify(sailingsRepository).findCruise(dateCaptor.capture(), dateCaptor.capture(), anyString(), eq(100_000L), eq(50_000L), any(BigDecimal.class), any(BigDecimal.class), anyString(), isNull(), isNull(), any(Pageable.class));
         List<LocalDate> capturedDates = dateCaptor.getAllValues();
         assertEquals(departureDate, capturedDates.get(0));
         assertEquals(returnDate, capturedDates.get(1));
@@ -121,37 +146,80 @@ class NCControllerApiImplTest {
         String departurePort = "DP";
 
         SailingsEntity sailingsEntity = new SailingsEntity();
-        when(sailingsRepository.findCruise(departureDate, returnDate, destinationCode, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, departurePort))
+        when(sailingsRepository.findCruise(departureDate, returnDate, destinationCode, 100_000L, 50_000L, daysAtSeaMin, daysAtSeaMax, departurePort, null, null, PageRequest.of(0, 101)))
                 .thenReturn(Collections.singletonList(sailingsEntity));
 
         CruiseOverView cruiseOverView = new CruiseOverView();
         when(cruiseOverViewMapper.toCruiseOverView(sailingsEntity)).thenReturn(cruiseOverView);
 
         // Act
-        ResponseEntity<List<CruiseOverView>> response = ncController.findCruise(departureDate, returnDate, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, destinationCode, departurePort);
+        ResponseEntity<List<CruiseOverView>> response = ncController.findCruise(departureDate, returnDate, priceUpTo, priceFrom, daysAtSeaMin, daysAtSeaMax, destinationCode, departurePort, null, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(Collections.singletonList(cruiseOverView), response.getBody());
     }
     @Test
-    void getCruiseDetails_shouldReturnNoContent() {
+    void findCruise_shouldReturnNextPageTokenWhenMoreRowsExist() {
+        // Arrange
+        LocalDate departureDate = LocalDate.now();
+        LocalDate returnDate = LocalDate.now().plusDays(7);
+        List<SailingsEntity> rows = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            SailingsEntity sailingsEntity = new SailingsEntity();
+            sailingsEntity.setId(id);
+            sailingsEntity.setInside(100 * id);
+            rows.add(sailingsEntity);
+        }
+        when(sailingsRepository.findCruise(eq(departureDate), eq(returnDate), any(), any(), any(), any(), any(), any(), isNull(), isNull(), eq(PageRequest.of(0, 3))))
+                .thenReturn(rows);
+        when(cruiseOverViewMapper.toCruiseOverView(any(SailingsEntity.class))).thenReturn(new CruiseOverView());
+
+        // Act
+        ResponseEntity<List<CruiseOverView>> response = ncController.findCruise(departureDate, returnDate, BigDecimal.TEN, BigDecimal.ONE,
+                BigDecimal.ONE, BigDecimal.TEN, null, null, 2, null);
+        String token = response.getHeaders().getFirst(PageToken.HEADER);
+        ncController.findCruise(departureDate, returnDate, BigDecimal.TEN, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.TEN, null, null, 2, token);
+
+        // Assert
+        assertEquals(2, response.getBody().size());
+        verify(sailingsRepository).findCruise(eq(departureDate), eq(returnDate), any(), any(), any(), any(), any(), any(),
+                eq(200L), eq(2L), eq(PageRequest.of(0, 3)));
+    }
+
+    @Test
+    void getCruiseDetails_shouldReturnAcceptedJob() {
+        // Mocking
+        IngestJob ingestJob = new IngestJob().jobId("job-1").status(IngestJob.StatusEnum.QUEUED);
+        when(ingestJobService.submit(IngestJob.TriggerEnum.MANUAL)).thenReturn(ingestJob);
+
+        // Execution
+        ResponseEntity<IngestJob> response = ncController.getCruiseDetails();
+
+        // Verification
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(ingestJob, response.getBody());
+        assertEquals("/ingest-jobs/job-1", response.getHeaders().getLocation().toString());
+        verify(ingestJobService, times(1)).submit(IngestJob.TriggerEnum.MANUAL);
+    }
+
+    @Test
+    void getIngestJob_shouldReturnNotFoundForUnknownJob() {
         // Mocking
-        when(nCService.getAllCruisesDetails()).thenReturn(ResponseEntity.noContent().build());
+        when(ingestJobService.find("unknown")).thenReturn(Optional.empty());
 
         // Execution
-        ResponseEntity<Void> response = ncController.getCruiseDetails();
+        ResponseEntity<IngestJob> response = ncController.getIngestJob("unknown");
 
         // Verification
-        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
-        verify(nCService, times(1)).getAllCruisesDetails();
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
     @Test
     void getDestinationCodes_shouldReturnListOfDestinationCodes() {
         // Mocking
         List<String> expectedDestinationCodes = Collections.singletonList("DEST1");
-        when(cruiseDetailsRepository.findUniqueDestinationCodes()).thenReturn(expectedDestinationCodes);
+        when(cruiseCatalogService.getDestinationCodes()).thenReturn(expectedDestinationCodes);
 
         // Execution
         ResponseEntity<List<String>> response = ncController.getDestinationCodes();
@@ -159,20 +227,15 @@ class NCControllerApiImplTest {
         // Verification
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedDestinationCodes, response.getBody());
-        verify(cruiseDetailsRepository, times(1)).findUniqueDestinationCodes();
+        verify(cruiseCatalogService, times(1)).getDestinationCodes();
     }
 
     @Test
     void getCruisePricesByCode_shouldReturnListOfSailings() {
         // Mocking
         String code = "CODE1";
-        List<CruiseDetailsEntity> cruiseDetailsEntities = new ArrayList<>();
-        CruiseDetailsEntity cruiseDetailsEntity = new CruiseDetailsEntity();
-        cruiseDetailsEntity.setSailingsEntities(Collections.singletonList(new SailingsEntity()));
-        cruiseDetailsEntities.add(cruiseDetailsEntity);
         List<Sailings> expectedSailings = Collections.singletonList(new Sailings());
-        when(cruiseDetailsRepository.findByCode(code)).thenReturn(cruiseDetailsEntities);
-        when(sailingsMapper.toSailings(any(SailingsEntity.class))).thenReturn(expectedSailings.get(0));
+        when(cruiseCatalogService.getCruisePricesByCode(code)).thenReturn(expectedSailings);
 
         // Execution
         ResponseEntity<List<Sailings>> response = ncController.getCruisePricesByCode(code);
@@ -180,8 +243,128 @@ class NCControllerApiImplTest {
         // Verification
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedSailings, response.getBody());
-        verify(cruiseDetailsRepository, times(1)).findByCode(code);
-        verify(sailingsMapper, times(1)).toSailings(any(SailingsEntity.class));
+        verify(cruiseCatalogService, times(1)).getCruisePricesByCode(code);
+    }
+
+    @Test
+    void getSailingPriceHistory_shouldDefaultToWeeklyBucketsOverNinetyDays() {
+        // Mocking
+        BigDecimal sailId = BigDecimal.ONE;
+        LocalDate toDate = LocalDate.of(2030, 4, 1);
+        PriceHistory expectedHistory = new PriceHistory().sailId(sailId);
+        when(priceHistoryService.getPriceHistory(sailId, PriceHistory.BucketEnum.WEEK, toDate.minusDays(90), toDate, null))
+                .thenReturn(expectedHistory);
+
+        // Execution
+        ResponseEntity<PriceHistory> response = ncController.getSailingPriceHistory(sailId, null, null, toDate, null);
+
+        // Verification
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(expectedHistory, response.getBody());
+    }
+
+    @Test
+    void getSailingPriceHistory_shouldRejectUnknownBucket() {
+        // Act and Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                ncController.getSailingPriceHistory(BigDecimal.ONE, "YEAR", null, null, null));
+    }
+
+    @Test
+    void getPriceDropAnalytics_shouldConvertCentsAndCountDaysSinceLow() {
+        // Mocking
+        LocalDate toDate = LocalDate.of(2030, 4, 30);
+        SailingPriceStats stats = new SailingPriceStats(BigDecimal.ONE, "B", BigDecimal.TEN, "CODE1", toDate.plusMonths(1),
+                85_000L, 80_000L, 20_000L, toDate.minusDays(5));
+        when(sailingsRepository.getPriceDropAnalytics(toDate.minusDays(30), toDate, RoomType.BALCONY, "ALASKA", null, 100))
+                .thenReturn(List.of(stats));
+
+        // Execution
+        ResponseEntity<List<PriceDropAnalytics>> response = ncController.getPriceDropAnalytics(null, toDate, "BALCONY", "ALASKA", null, null);
+
+        // Verification
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        PriceDropAnalytics analytics = Objects.requireNonNull(response.getBody()).get(0);
+        assertEquals(new BigDecimal("850.00"), analytics.getCurrentPrice());
+        assertEquals(new BigDecimal("200.00"), analytics.getLargestDrop());
+        assertEquals("BALCONY", analytics.getRoomType());
+        assertEquals(5, analytics.getDaysSinceLow());
+    }
+
+    @Test
+    void getPriceDropAnalytics_shouldCapTheResultsAtTheMaximumPageSize() {
+        // Mocking
+        LocalDate toDate = LocalDate.of(2030, 4, 30);
+        when(sailingsRepository.getPriceDropAnalytics(toDate.minusDays(30), toDate, RoomType.INSIDE, null, null, 500))
+                .thenReturn(List.of());
+
+        // Execution
+        ResponseEntity<List<PriceDropAnalytics>> response = ncController.getPriceDropAnalytics(null, toDate, "INSIDE", null, null, 1000);
+
+        // Verification
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(), response.getBody());
+        assertFalse(response.getHeaders().containsKey(PageToken.HEADER));
+    }
+
+    @Test
+    void getCruiseFacets_shouldFallBackToTheDatabaseAndSortEachFacet() {
+        // Mocking
+        LocalDate departureDate = LocalDate.of(2030, 1, 1);
+        LocalDate returnDate = LocalDate.of(2030, 12, 31);
+        when(cruiseSnapshotIndex.getCruiseFacets(departureDate, returnDate, null, 150_000L, null, null, null, null))
+                .thenReturn(Optional.empty());
+        when(sailingsRepository.getCruiseFacets(departureDate, returnDate, null, 150_000L, null, null, null, null))
+                .thenReturn(List.of(
+                        new CruiseFacet(CruiseFacet.Facet.TOTAL, null, 5, 60_000L),
+                        new CruiseFacet(CruiseFacet.Facet.DESTINATION, "ALASKA", 2, 70_000L),
+                        new CruiseFacet(CruiseFacet.Facet.DESTINATION, "BERMUDA", 3, 60_000L),
+                        new CruiseFacet(CruiseFacet.Facet.DURATION, "10-14", 1, 90_000L),
+                        new CruiseFacet(CruiseFacet.Facet.DURATION, "6-9", 4, 60_000L),
+                        new CruiseFacet(CruiseFacet.Facet.ROOM_TYPE, "SPA", 0, null),
+                        new CruiseFacet(CruiseFacet.Facet.ROOM_TYPE, "INSIDE", 5, 60_000L)));
+
+        // Execution
+        ResponseEntity<CruiseFacets> response = ncController.getCruiseFacets(departureDate, returnDate,
+                new BigDecimal("1500"), null, null, null, null, null);
+
+        // Verification
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CruiseFacets facets = Objects.requireNonNull(response.getBody());
+        assertEquals(5L, facets.getTotal().getCount());
+        assertEquals(new BigDecimal("600.00"), facets.getTotal().getMinPrice());
+        assertEquals(List.of("BERMUDA", "ALASKA"), facets.getDestinationCodes().stream().map(FacetCount::getValue).toList());
+        assertEquals(List.of("6-9", "10-14"), facets.getDurations().stream().map(FacetCount::getValue).toList());
+        assertEquals(List.of("INSIDE", "SPA"), facets.getRoomTypes().stream().map(FacetCount::getValue).toList());
+        assertEquals(List.of(), facets.getDeparturePorts());
+    }
+
+    @Test
+    void getBestSailingsByPriceAndType_shouldKeySailingsByRequestedSailId() {
+        // Mocking
+        SailingsEntity sailing = new SailingsEntity();
+        Sailings expectedSailings = new Sailings();
+        List<BigDecimal> sailIds = List.of(new BigDecimal("1.0"), new BigDecimal("2"));
+        when(sailingsRepository.findSailingsWithLowestPriceRoomType(sailIds, RoomType.INSIDE))
+                .thenReturn(Map.of(BigDecimal.ONE, sailing));
+        when(sailingsMapper.toSailings(sailing)).thenReturn(expectedSailings);
+
+        // Execution
+        ResponseEntity<Map<String, Sailings>> response = ncController.getBestSailingsByPriceAndType(sailIds, "INSIDE");
+
+        // Verification
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(Map.of("1.0", expectedSailings), response.getBody());
+    }
+
+    @Test
+    void getSailingsPricesBySailIds_shouldRejectTooManySailIds() {
+        // Arrange
+        List<BigDecimal> sailIds = Collections.nCopies(101, BigDecimal.ONE);
+
+        // Act and Assert
+        assertThrows(IllegalArgumentException.class, () -> ncController.getSailingsPricesBySailIds(sailIds));
+        verifyNoInteractions(sailingsRepository);
     }
 
     @Test
@@ -191,7 +374,7 @@ class NCControllerApiImplTest {
         String roomType = "inside";
         SailingsEntity sailingsEntity = new SailingsEntity();
         Sailings expectedSailings = new Sailings();
-        when(sailingsRepository.findSailingsWithLowestPriceRoomType(sailId, roomType)).thenReturn(sailingsEntity);
+        when(sailingsRepository.findSailingsWithLowestPriceRoomType(sailId, RoomType.INSIDE)).thenReturn(sailingsEntity);
         when(sailingsMapper.toSailings(any(SailingsEntity.class))).thenReturn(expectedSailings);
 
         // Execution
@@ -200,7 +383,7 @@ class NCControllerApiImplTest {
         // Verification
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedSailings, response.getBody());
-        verify(sailingsRepository, times(1)).findSailingsWithLowestPriceRoomType(sailId, roomType);
+        verify(sailingsRepository, times(1)).findSailingsWithLowestPriceRoomType(sailId, RoomType.INSIDE);
         verify(sailingsMapper, times(1)).toSailings(any(SailingsEntity.class));
     }
 
@@ -215,24 +398,49 @@ class NCControllerApiImplTest {
         SailingsEntity sailingsEntity = new SailingsEntity();
         Tuple tuple = mock(Tuple.class);
         when(tuple.get(0, SailingsEntity.class)).thenReturn(sailingsEntity);
-        when(tuple.get(1, BigDecimal.class)).thenReturn(BigDecimal.ZERO);
+        when(tuple.get(1, Long.class)).thenReturn(0L);
         List<Tuple> tuples = Collections.singletonList(tuple);
 
-        when(sailingsRepository.getSailingsPriceDrops(fromDate, toDate, percentage, roomType)).thenReturn(tuples);
+        when(sailingsRepository.getSailingsPriceDrops(fromDate, toDate, percentage, RoomType.INSIDE, null, null, PageRequest.of(0, 101))).thenReturn(tuples);
 
         CruiseOverView expectedCruiseOverView = new CruiseOverView();
         when(cruiseOverViewMapper.toCruiseOverView(any(SailingsEntity.class))).thenReturn(expectedCruiseOverView);
 
         // Execution
-        ResponseEntity<List<CruiseOverView>> response = ncController.getSailingsPriceDrops(fromDate, toDate, percentage, roomType);
+        ResponseEntity<List<CruiseOverView>> response = ncController.getSailingsPriceDrops(fromDate, toDate, percentage, roomType, null, null);
 
         // Verification
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(Collections.singletonList(expectedCruiseOverView), response.getBody());
-        verify(sailingsRepository, times(1)).getSailingsPriceDrops(fromDate, toDate, percentage, roomType);
+        verify(sailingsRepository, times(1)).getSailingsPriceDrops(fromDate, toDate, percentage, RoomType.INSIDE, null, null, PageRequest.of(0, 101));
         verify(cruiseOverViewMapper, times(1)).toCruiseOverView(any(SailingsEntity.class));
     }
 
+    @Test
+    void getSailingsPriceDrops_shouldReadPriceDropTableForConsecutiveDays() {
+        // Mocking
+        BigDecimal percentage = new BigDecimal("0.10");
+        LocalDate fromDate = LocalDate.of(2023, 10, 7);
+        LocalDate toDate = LocalDate.of(2023, 10, 8);
+
+        SailingsEntity sailingsEntity = new SailingsEntity();
+        Tuple tuple = mock(Tuple.class);
+        when(tuple.get(0, SailingsEntity.class)).thenReturn(sailingsEntity);
+        when(tuple.get(1, Long.class)).thenReturn(1000L);
+        when(priceDropRepository.existsByPublishedDate(toDate)).thenReturn(true);
+        when(priceDropRepository.findPriceDrops(toDate, RoomType.OCEAN_VIEW, percentage, null, null, PageRequest.of(0, 101))).thenReturn(List.of(tuple));
+        when(cruiseOverViewMapper.toCruiseOverView(any(SailingsEntity.class))).thenReturn(new CruiseOverView());
+
+        // Execution
+        ResponseEntity<List<CruiseOverView>> response = ncController.getSailingsPriceDrops(fromDate, toDate, percentage, "OCEAN_VIEW", null, null);
+
+        // Verification
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().size());
+        assertEquals(1000L, sailingsEntity.getOldPrice());
+        verify(sailingsRepository, never()).getSailingsPriceDrops(any(), any(), any(), any(), any(), any(), any());
+    }
+
     @Test
     void getSailingsByDestinationAndDeparture_shouldReturnListOfCruiseOverViewMapper() {
         // Mocking
@@ -0,0 +1,128 @@
+package com.plomteux.ncconnector.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.service.NCService;
+import com.plomteux.ncconnector.support.LoadRunner;
+import com.plomteux.ncconnector.support.NclApiStub;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Loads {@code ncl.load.days} days of a synthetic catalogue through the upstream stub, then drives the read
+ * endpoints over HTTP at {@code ncl.load.concurrency}, after {@code ncl.load.warmup} unmeasured requests, and logs
+ * p50/p99 latency and throughput per endpoint.
+ * The defaults are a smoke run; size it with for example
+ * {@code -Dncl.load.cruises=5000 -Dncl.load.sailings=24 -Dncl.load.days=14 -Dncl.load.concurrency=32 -Dncl.load.requests=20000},
+ * and add {@code spring.datasource.*} plus {@code -Dspring.jpa.hibernate.ddl-auto=create-drop} to run it on PostgreSQL.
+ */
+@Slf4j
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class NCControllerApiLoadTest {
+    private static final NclApiStub STUB = new NclApiStub();
+    private static final List<String> DESTINATIONS = List.of("CARIBBEAN", "ALASKA", "EUROPE", "HAWAII", "ASIA", "BAHAMAS", "BERMUDA", "MEXICO");
+    private static final List<String> PORTS = List.of("MIA", "FLL", "SEA", "BCN", "CIV", "HNL", "NYC", "LAX", "SJU", "TPA", "VAN", "SOU");
+    private static final String SHIFT_SAILINGS = "UPDATE sailings_entity SET published_date = published_date - INTERVAL '1' DAY, "
+            + "valid_to = CASE WHEN valid_to = ? THEN valid_to ELSE valid_to - INTERVAL '1' DAY END";
+    private static final String SHIFT_PRICE_DROPS = "UPDATE price_drop_entity SET published_date = published_date - INTERVAL '1' DAY";
+
+    private final int cruises = Integer.getInteger("ncl.load.cruises", 20);
+    private final int sailings = Integer.getInteger("ncl.load.sailings", 4);
+    private final int days = Integer.getInteger("ncl.load.days", 3);
+    private final int concurrency = Integer.getInteger("ncl.load.concurrency", 4);
+    private final int requests = Integer.getInteger("ncl.load.requests", 40);
+    private final int warmup = Integer.getInteger("ncl.load.warmup", requests / 10);
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private NCService ncService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CruiseDetailsRepository cruiseDetailsRepository;
+    @Autowired
+    private SailingsRepository sailingsRepository;
+    @Autowired
+    private PriceDropRepository priceDropRepository;
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry registry) {
+        registry.add("ncl.api.endpoint.itinaries", () -> STUB.url("/itineraries"));
+        registry.add("ncl.api.endpoint.prices", () -> STUB.url("/prices"));
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @AfterEach
+    void cleanup() {
+        priceDropRepository.deleteAllInBatch();
+        sailingsRepository.deleteAllInBatch();
+        cruiseDetailsRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void readEndpoints_underConcurrentLoad() throws Exception {
+        // Arrange
+        long ingestStart = System.nanoTime();
+        List<List<CruiseDetails>> history = SyntheticCatalogue.history(cruises, sailings, days);
+        for (int day = 0; day < days; day++) {
+            if (day > 0) {
+                jdbcTemplate.update(SHIFT_SAILINGS, SailingsEntity.OPEN_END);
+                jdbcTemplate.update(SHIFT_PRICE_DROPS);
+            }
+            STUB.itineraries(objectMapper.writeValueAsBytes(history.get(day)));
+            ncService.ingestCruisesDetails();
+        }
+        log.info("Loaded {} cruises x {} sailings x {} days ({} sailing rows) in {} ms", cruises, sailings, days,
+                sailingsRepository.count(), (System.nanoTime() - ingestStart) / 1_000_000);
+        LoadRunner loadRunner = new LoadRunner(concurrency, warmup);
+
+        // Act
+        List<LoadRunner.Result> results = List.of(
+                loadRunner.run("/find-cruise", requests, i -> get("/find-cruise?departureDate=2030-01-01&returnDate=2031-12-31"
+                        + "&priceFrom=0&priceUpTo=100000&daysAtSeaMin=1&daysAtSeaMax=30"
+                        + "&destinationCode=" + DESTINATIONS.get(i % DESTINATIONS.size())
+                        + "&departurePort=" + PORTS.get(i % PORTS.size()) + "&pageSize=50")),
+                loadRunner.run("/daily-price-drops", requests, i -> get("/daily-price-drops?fromDate=" + LocalDate.now().minusDays(1)
+                        + "&toDate=" + LocalDate.now() + "&percentage=0&roomType=INSIDE&pageSize=100")),
+                loadRunner.run("/cruise/{code}/prices", requests, i -> get("/cruise/SYN" + (i % cruises) + "/prices")),
+                loadRunner.run("/destination-codes", requests, i -> get("/destination-codes")));
+
+        // Assert
+        log.info("{} concurrent clients, {} requests per endpoint:\n{}", concurrency, requests,
+                String.join("\n", results.stream().map(LoadRunner.Result::toString).toList()));
+        results.forEach(result -> assertEquals(0, result.errors(), result.name()));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+    }
+}
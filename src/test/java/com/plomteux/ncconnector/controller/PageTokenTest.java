@@ -0,0 +1,39 @@
+package com.plomteux.ncconnector.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PageTokenTest {
+
+    @Test
+    void decode_returnsTheEncodedPosition() {
+        // Arrange
+        PageToken token = new PageToken(123_456L, 42L);
+
+        // Act
+        PageToken decoded = PageToken.decode(token.encode());
+
+        // Assert
+        assertEquals(token, decoded);
+    }
+
+    @Test
+    void decode_returnsAPositionWithoutSortValue() {
+        // Arrange
+        PageToken token = new PageToken(null, 42L);
+
+        // Act
+        PageToken decoded = PageToken.decode(token.encode());
+
+        // Assert
+        assertEquals(token, decoded);
+    }
+
+    @Test
+    void decode_rejectsAMalformedToken() {
+        // Act and Assert
+        assertThrows(IllegalArgumentException.class, () -> PageToken.decode("not a token"));
+    }
+}
@@ -0,0 +1,265 @@
+package com.plomteux.ncconnector.repository;
+
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.service.PriceDropService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the room-type queries against H2. The benchmark only runs with {@code -Dncl.benchmark.sailings=<rows>}; point
+ * {@code spring.datasource.*} at PostgreSQL to compare plans on a real planner.
+ */
+@Slf4j
+@ActiveProfiles("test")
+@SpringBootTest
+class SailingsRepositoryTest {
+    private static final LocalDate DAY_ONE = LocalDate.of(2030, 1, 1);
+    private static final LocalDate DAY_TWO = DAY_ONE.plusDays(1);
+    private static final String INSERT = "INSERT INTO sailings_entity (id, sail_id, bundle_type, package_id, published_date, valid_to, "
+            + "studio, inside, ocean_view, balcony, mini_suite, suite, haven, spa) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String LEGACY_LOWEST_PRICE = "SELECT se FROM SailingsEntity se WHERE se.sailId = :sailId ORDER BY "
+            + "CASE WHEN :roomType = 'inside' THEN se.inside WHEN :roomType = 'oceanView' THEN se.oceanView "
+            + "WHEN :roomType = 'miniSuite' THEN se.oceanView ELSE se.inside END ASC LIMIT 1";
+    private static final String LEGACY_PRICE_DROPS = "SELECT s2, CASE WHEN :roomType = 'inside' THEN s.inside - s2.inside "
+            + "WHEN :roomType = 'balcony' THEN s.balcony - s2.balcony ELSE s.inside - s2.inside END AS priceDifference "
+            + "FROM SailingsEntity s INNER JOIN SailingsEntity s2 ON s.sailId = s2.sailId "
+            + "WHERE s.publishedDate <= :from AND s.validTo >= :from AND s.bundleType = s2.bundleType AND s.packageId = s2.packageId "
+            + "AND ((:roomType = 'inside' AND s.inside > s2.inside * (1 - COALESCE(:percentage, 0))) "
+            + "OR (:roomType = 'balcony' AND s.balcony > s2.balcony * (1 - COALESCE(:percentage, 0)))) "
+            + "AND s2.publishedDate <= :to AND s2.validTo >= :to "
+            + "ORDER BY CASE WHEN :roomType = 'inside' THEN s.inside - s2.inside "
+            + "WHEN :roomType = 'balcony' THEN s.balcony - s2.balcony ELSE s.inside - s2.inside END DESC";
+
+    @Autowired
+    private SailingsRepository sailingsRepository;
+    @Autowired
+    private PriceDropRepository priceDropRepository;
+    @Autowired
+    private PriceDropService priceDropService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @AfterEach
+    void cleanup() {
+        priceDropRepository.deleteAllInBatch();
+        sailingsRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void findSailingsWithLowestPriceRoomType_sortsOnTheRequestedColumn() {
+        // Arrange
+        insert(List.of(
+                sailing(1, 1, DAY_ONE, DAY_ONE, price(RoomType.MINI_SUITE, 500), price(RoomType.OCEAN_VIEW, 900)),
+                sailing(2, 1, DAY_TWO, DAY_TWO, price(RoomType.MINI_SUITE, 700), price(RoomType.OCEAN_VIEW, 800)),
+                sailing(3, 2, DAY_TWO, DAY_TWO, price(RoomType.MINI_SUITE, 100), price(RoomType.OCEAN_VIEW, 100))));
+
+        // Act
+        SailingsEntity miniSuite = sailingsRepository.findSailingsWithLowestPriceRoomType(BigDecimal.ONE, RoomType.MINI_SUITE);
+        SailingsEntity oceanView = sailingsRepository.findSailingsWithLowestPriceRoomType(BigDecimal.ONE, RoomType.OCEAN_VIEW);
+
+        // Assert
+        assertEquals(1L, miniSuite.getId());
+        assertEquals(2L, oceanView.getId());
+    }
+
+    @Test
+    void findSailingsWithLowestPriceRoomType_resolvesSeveralSailIdsInOneQuery() {
+        // Arrange
+        insert(List.of(
+                sailing(1, 1, DAY_ONE, DAY_ONE, price(RoomType.BALCONY, 900)),
+                sailing(2, 1, DAY_TWO, DAY_TWO, price(RoomType.BALCONY, 700)),
+                sailing(3, 2, DAY_ONE, DAY_ONE, price(RoomType.BALCONY, 500)),
+                sailing(4, 2, DAY_TWO, DAY_TWO, price(RoomType.BALCONY, 500)),
+                sailing(5, 3, DAY_TWO, DAY_TWO, price(RoomType.INSIDE, 100))));
+
+        // Act
+        Map<BigDecimal, SailingsEntity> lowest = sailingsRepository.findSailingsWithLowestPriceRoomType(
+                List.of(BigDecimal.ONE, BigDecimal.valueOf(2), BigDecimal.valueOf(3), BigDecimal.valueOf(4)), RoomType.BALCONY);
+
+        // Assert
+        assertEquals(2, lowest.size());
+        assertEquals(2L, lowest.get(BigDecimal.ONE).getId());
+        assertEquals(3L, lowest.get(BigDecimal.valueOf(2)).getId());
+    }
+
+    @Test
+    void getSailingsPriceDrops_comparesOnlyTheRequestedColumn() {
+        // Arrange
+        insert(List.of(
+                sailing(1, 1, DAY_ONE, DAY_ONE, price(RoomType.BALCONY, 1000), price(RoomType.INSIDE, 500)),
+                sailing(2, 1, DAY_TWO, DAY_TWO, price(RoomType.BALCONY, 900), price(RoomType.INSIDE, 500)),
+                sailing(3, 2, DAY_ONE, DAY_TWO, price(RoomType.BALCONY, 1000), price(RoomType.INSIDE, 500))));
+
+        // Act
+        List<Tuple> balcony = sailingsRepository.getSailingsPriceDrops(DAY_ONE, DAY_TWO, BigDecimal.ZERO, RoomType.BALCONY, null, null, Pageable.unpaged());
+        List<Tuple> inside = sailingsRepository.getSailingsPriceDrops(DAY_ONE, DAY_TWO, BigDecimal.ZERO, RoomType.INSIDE, null, null, Pageable.unpaged());
+
+        // Assert
+        assertEquals(1, balcony.size());
+        assertEquals(2L, balcony.get(0).get(0, SailingsEntity.class).getId());
+        assertEquals(100L, balcony.get(0).get(1, Long.class));
+        assertTrue(inside.isEmpty());
+    }
+
+    @Test
+    void getSailingsPriceDrops_returnsTheSameDropsAsThePriceDropTable() {
+        // Arrange
+        insert(List.of(
+                sailing(1, 1, DAY_ONE, DAY_ONE, price(RoomType.INSIDE, 1000)),
+                sailing(2, 1, DAY_TWO, SailingsEntity.OPEN_END, price(RoomType.INSIDE, 900)),
+                sailing(3, 2, DAY_ONE, DAY_ONE, price(RoomType.INSIDE, 1000)),
+                sailing(4, 2, DAY_TWO, SailingsEntity.OPEN_END, price(RoomType.INSIDE, 950)),
+                sailing(5, 3, DAY_ONE, SailingsEntity.OPEN_END, price(RoomType.INSIDE, 1000)),
+                sailing(6, 4, DAY_ONE, DAY_ONE, price(RoomType.INSIDE, 1000)),
+                sailing(7, 4, DAY_TWO, SailingsEntity.OPEN_END, price(RoomType.INSIDE, 1040))));
+        priceDropService.backfill();
+
+        for (String percentage : List.of("0", "0.05", "0.08", "0.2")) {
+            // Act
+            List<Long> selfJoin = sailingsRepository.getSailingsPriceDrops(DAY_ONE, DAY_TWO, new BigDecimal(percentage),
+                    RoomType.INSIDE, null, null, Pageable.unpaged()).stream().map(SailingsRepositoryTest::id).toList();
+            List<Long> table = priceDropRepository.findPriceDrops(DAY_TWO, RoomType.INSIDE, new BigDecimal(percentage),
+                    null, null, Pageable.unpaged()).stream().map(SailingsRepositoryTest::id).toList();
+
+            // Assert
+            assertEquals(table, selfJoin, percentage);
+        }
+        assertEquals(List.of(2L, 4L), priceDropRepository.findPriceDrops(DAY_TWO, RoomType.INSIDE, new BigDecimal("0.05"),
+                null, null, Pageable.unpaged()).stream().map(SailingsRepositoryTest::id).toList());
+    }
+
+    @Test
+    void getPriceDropAnalytics_summarizesEachSailingOverTheWindow() {
+        // Arrange
+        LocalDate from = DAY_ONE.plusDays(9);
+        LocalDate to = DAY_ONE.plusDays(19);
+        insert(List.of(
+                sailing(1, 1, DAY_ONE, DAY_ONE.plusDays(10), price(RoomType.INSIDE, 1000)),
+                sailing(2, 1, DAY_ONE.plusDays(11), DAY_ONE.plusDays(13), price(RoomType.INSIDE, 800)),
+                sailing(3, 1, DAY_ONE.plusDays(14), DAY_ONE.plusDays(16), price(RoomType.INSIDE, 900)),
+                sailing(4, 1, DAY_ONE.plusDays(17), SailingsEntity.OPEN_END, price(RoomType.INSIDE, 850)),
+                sailing(5, 2, DAY_ONE, DAY_ONE.plusDays(8), price(RoomType.INSIDE, 500)),
+                sailing(6, 2, from, SailingsEntity.OPEN_END, price(RoomType.INSIDE, 400)),
+                sailing(7, 3, DAY_ONE, DAY_ONE.plusDays(4), price(RoomType.INSIDE, 300))));
+
+        // Act
+        List<SailingPriceStats> stats = sailingsRepository.getPriceDropAnalytics(from, to, RoomType.INSIDE, null, null, 10);
+        List<SailingPriceStats> first = sailingsRepository.getPriceDropAnalytics(from, to, RoomType.INSIDE, null, null, 1);
+        List<SailingPriceStats> filtered = sailingsRepository.getPriceDropAnalytics(from, to, RoomType.INSIDE, "NOPE", "XXX", 10);
+
+        // Assert
+        assertEquals(2, stats.size());
+        SailingPriceStats dropped = stats.get(0);
+        assertEquals(0, BigDecimal.ONE.compareTo(dropped.sailId()));
+        assertEquals(850L, dropped.currentPrice());
+        assertEquals(800L, dropped.minPrice());
+        assertEquals(200L, dropped.largestDrop());
+        assertEquals(DAY_ONE.plusDays(13), dropped.lowDate());
+        SailingPriceStats atLow = stats.get(1);
+        assertEquals(0, BigDecimal.valueOf(2).compareTo(atLow.sailId()));
+        assertEquals(400L, atLow.minPrice());
+        assertEquals(100L, atLow.largestDrop());
+        assertEquals(to, atLow.lowDate());
+        assertEquals(1, first.size());
+        assertTrue(filtered.isEmpty());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "ncl.benchmark.sailings", matches = "\\d+")
+    void benchmark_roomTypeQueriesAgainstCaseQueries() {
+        // Arrange
+        int rows = Integer.getInteger("ncl.benchmark.sailings");
+        int sails = rows / 2;
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            int sailId = i % sails;
+            LocalDate day = i < sails ? DAY_ONE : DAY_TWO;
+            int base = 300 + (sailId * 37 + (i < sails ? 0 : 11)) % 2000;
+            batch.add(sailing(i + 1, sailId, day, day, price(RoomType.INSIDE, base), price(RoomType.BALCONY, base + 700)));
+            if (batch.size() == 10_000) {
+                insert(batch);
+                batch.clear();
+            }
+        }
+        insert(batch);
+        jdbcTemplate.execute("ANALYZE");
+        BigDecimal sailId = BigDecimal.valueOf(sails / 2);
+
+        // Act
+        long legacyLowest = median(() -> entityManager.createQuery(LEGACY_LOWEST_PRICE, SailingsEntity.class)
+                .setParameter("sailId", sailId).setParameter("roomType", "balcony").getResultList());
+        long lowest = median(() -> sailingsRepository.findSailingsWithLowestPriceRoomType(sailId, RoomType.BALCONY));
+        long legacyDrops = median(() -> entityManager.createQuery(LEGACY_PRICE_DROPS, Tuple.class)
+                .setParameter("from", DAY_ONE).setParameter("to", DAY_TWO).setParameter("percentage", BigDecimal.ZERO)
+                .setParameter("roomType", "balcony").getResultList());
+        long drops = median(() -> sailingsRepository.getSailingsPriceDrops(DAY_ONE, DAY_TWO, BigDecimal.ZERO, RoomType.BALCONY, null, null, Pageable.unpaged()));
+
+        // Assert
+        log.info("{} sailings: lowest price {} ms (CASE {} ms), price drops {} ms (CASE {} ms)",
+                rows, lowest, legacyLowest, drops, legacyDrops);
+        assertEquals(entityManager.createQuery(LEGACY_PRICE_DROPS, Tuple.class)
+                        .setParameter("from", DAY_ONE).setParameter("to", DAY_TWO).setParameter("percentage", BigDecimal.ZERO)
+                        .setParameter("roomType", "balcony").getResultList().size(),
+                sailingsRepository.getSailingsPriceDrops(DAY_ONE, DAY_TWO, BigDecimal.ZERO, RoomType.BALCONY, null, null, Pageable.unpaged()).size());
+    }
+
+    private static Long id(Tuple row) {
+        return row.get(0, SailingsEntity.class).getId();
+    }
+
+    private void insert(List<Object[]> sailings) {
+        jdbcTemplate.batchUpdate(INSERT, sailings);
+    }
+
+    private static Object[] sailing(long id, long sailId, LocalDate publishedDate, LocalDate validTo, Object[]... prices) {
+        Object[] row = new Object[6 + RoomType.values().length];
+        row[0] = id;
+        row[1] = BigDecimal.valueOf(sailId);
+        row[2] = "CRUISE_ONLY";
+        row[3] = BigDecimal.valueOf(sailId % 97);
+        row[4] = Date.valueOf(publishedDate);
+        row[5] = Date.valueOf(validTo);
+        Arrays.stream(prices).forEach(price -> row[6 + ((RoomType) price[0]).ordinal()] = price[1]);
+        return row;
+    }
+
+    private static Object[] price(RoomType roomType, long price) {
+        return new Object[]{roomType, BigDecimal.valueOf(price)};
+    }
+
+    private static long median(Supplier<?> query) {
+        long[] millis = new long[7];
+        for (int i = 0; i < millis.length; i++) {
+            long start = System.nanoTime();
+            query.get();
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(millis);
+        return millis[millis.length / 2];
+    }
+}
@@ -0,0 +1,69 @@
+package com.plomteux.ncconnector.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ActiveProfiles("test")
+@SpringBootTest
+class CruiseCatalogServiceTest {
+    @MockBean
+    private CruiseDetailsRepository cruiseDetailsRepository;
+    @Autowired
+    private CruiseCatalogService cruiseCatalogService;
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        cruiseCatalogService.evictAll();
+    }
+
+    @Test
+    void getDestinationCodes_isServedFromCacheUntilEvicted() {
+        // Arrange
+        when(cruiseDetailsRepository.findUniqueDestinationCodes()).thenReturn(List.of("ALASKA", "CARIBBEAN"));
+        Cache<?, ?> cache = (Cache<?, ?>) cacheManager.getCache(CruiseCatalogService.DESTINATION_CODES).getNativeCache();
+        long hits = cache.stats().hitCount();
+
+        // Act
+        cruiseCatalogService.getDestinationCodes();
+        List<String> cached = cruiseCatalogService.getDestinationCodes();
+        cruiseCatalogService.evictAll();
+        cruiseCatalogService.getDestinationCodes();
+
+        // Assert
+        assertEquals(List.of("ALASKA", "CARIBBEAN"), cached);
+        verify(cruiseDetailsRepository, times(2)).findUniqueDestinationCodes();
+        assertEquals(hits + 1, cache.stats().hitCount());
+    }
+
+    @Test
+    void getCruisesByDestinationCode_cachesPerDestination() {
+        // Arrange
+        when(cruiseDetailsRepository.findByDestinationCode("ALASKA")).thenReturn(List.of());
+        when(cruiseDetailsRepository.findByDestinationCode("EUROPE")).thenReturn(List.of());
+
+        // Act
+        cruiseCatalogService.getCruisesByDestinationCode("ALASKA");
+        cruiseCatalogService.getCruisesByDestinationCode("ALASKA");
+        cruiseCatalogService.getCruisesByDestinationCode("EUROPE");
+
+        // Assert
+        verify(cruiseDetailsRepository, times(1)).findByDestinationCode("ALASKA");
+        verify(cruiseDetailsRepository, times(1)).findByDestinationCode("EUROPE");
+    }
+}
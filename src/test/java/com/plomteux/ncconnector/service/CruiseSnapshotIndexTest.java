@@ -0,0 +1,177 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.mapper.CruiseDetailsMapper;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.CruiseFacet;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class CruiseSnapshotIndexTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2000, 1, 1);
+    private static final LocalDate LAST_DAY = LocalDate.of(2100, 1, 1);
+    private static final int LIMIT = 10_000;
+
+    @Autowired
+    private CruiseSnapshotIndex cruiseSnapshotIndex;
+    @Autowired
+    private CruiseDetailsMapper cruiseDetailsMapper;
+    @Autowired
+    private CruiseDetailsRepository cruiseDetailsRepository;
+    @Autowired
+    private CodeDictionary codeDictionary;
+    @Autowired
+    private SailingsRepository sailingsRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        var snapshot = SyntheticCatalogue.cruises(120, 10, 11);
+        snapshot.forEach(cruise -> cruise.getSailings().forEach(sailing ->
+                sailing.getPricing().forEach(pricing -> pricing.setTotalPrice(pricing.getCombinedPrice()))));
+        List<CruiseDetailsEntity> entities = snapshot.stream().map(cruiseDetailsMapper::toCruiseDetailsEntity).toList();
+        codeDictionary.intern(entities);
+        cruiseDetailsRepository.saveAllAndFlush(entities);
+        cruiseSnapshotIndex.rebuild();
+    }
+
+    @AfterEach
+    void cleanup() {
+        sailingsRepository.deleteAllInBatch();
+        cruiseDetailsRepository.deleteAllInBatch();
+        cruiseSnapshotIndex.rebuild();
+    }
+
+    @Test
+    void findCruise_matchesTheRepositoryWithoutQueries() {
+        // Arrange
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // Act
+        long start = System.nanoTime();
+        List<Long> all = indexIds(FIRST_DAY, LAST_DAY, null, null, null, null, null, null, null, null);
+        List<Long> filtered = indexIds(LocalDate.of(2030, 2, 1), LocalDate.of(2030, 8, 1), "CARIBBEAN",
+                150_000L, 50_000L, BigDecimal.valueOf(3), BigDecimal.valueOf(10), "MIA", null, null);
+        long micros = (System.nanoTime() - start) / 1_000;
+        long queries = statistics.getPrepareStatementCount();
+
+        // Assert
+        log.info("Two snapshot lookups answered in {} µs", micros);
+        assertEquals(0, queries);
+        assertEquals(1200, all.size());
+        assertEquals(repositoryIds(FIRST_DAY, LAST_DAY, null, null, null, null, null, null, null, null), all);
+        assertFalse(filtered.isEmpty());
+        assertEquals(repositoryIds(LocalDate.of(2030, 2, 1), LocalDate.of(2030, 8, 1), "CARIBBEAN",
+                150_000L, 50_000L, BigDecimal.valueOf(3), BigDecimal.valueOf(10), "MIA", null, null), filtered);
+    }
+
+    @Test
+    void findCruise_continuesAfterTheKeysetLikeTheRepository() {
+        // Arrange
+        SailingsEntity tenth = sailingsRepository.findCruise(FIRST_DAY, LAST_DAY, null, null, 80_000L, null, null,
+                null, null, null, PageRequest.of(0, 10)).get(9);
+
+        // Act
+        List<Long> next = indexIds(FIRST_DAY, LAST_DAY, null, null, 80_000L, null, null, null, tenth.getInside(), tenth.getId());
+
+        // Assert
+        assertEquals(repositoryIds(FIRST_DAY, LAST_DAY, null, null, 80_000L, null, null, null, tenth.getInside(), tenth.getId()), next);
+    }
+
+    @Test
+    void findCruise_pagesThroughUnpricedSailingsLikeTheRepository() {
+        // Arrange
+        jdbcTemplate.update("UPDATE sailings_entity SET inside = NULL WHERE MOD(id, 7) = 0");
+        cruiseSnapshotIndex.rebuild();
+
+        // Act
+        List<Long> fromIndex = new ArrayList<>();
+        List<Long> fromRepository = new ArrayList<>();
+        Long afterPrice = null;
+        Long afterId = null;
+        do {
+            List<CruiseSnapshotIndex.Hit> page = cruiseSnapshotIndex.findCruise(FIRST_DAY, LAST_DAY, null, null, null,
+                    null, null, null, afterPrice, afterId, 100).orElseThrow();
+            fromRepository.addAll(sailingsRepository.findCruise(FIRST_DAY, LAST_DAY, null, null, null, null, null, null,
+                    afterPrice, afterId, PageRequest.of(0, 100)).stream().map(SailingsEntity::getId).toList());
+            page.forEach(hit -> fromIndex.add(hit.sailingId()));
+            afterPrice = page.isEmpty() ? null : page.get(page.size() - 1).inside();
+            afterId = page.isEmpty() ? null : page.get(page.size() - 1).sailingId();
+        } while (afterId != null);
+
+        // Assert
+        assertEquals(1200, fromIndex.size());
+        assertEquals(1200, Set.copyOf(fromIndex).size());
+        assertEquals(fromRepository, fromIndex);
+    }
+
+    @Test
+    void getCruiseFacets_matchesTheRepositoryGroupedQuery() {
+        // Act
+        List<CruiseFacet> all = cruiseSnapshotIndex.getCruiseFacets(FIRST_DAY, LAST_DAY, null, null, null, null, null, null)
+                .orElseThrow();
+        List<CruiseFacet> filtered = cruiseSnapshotIndex.getCruiseFacets(LocalDate.of(2030, 2, 1), LocalDate.of(2030, 8, 1),
+                null, 150_000L, 50_000L, BigDecimal.valueOf(3), null, null).orElseThrow();
+
+        // Assert
+        assertEquals(new CruiseFacet(CruiseFacet.Facet.TOTAL, null, 1200, all.get(0).minPrice()), all.get(0));
+        assertTrue(all.stream().anyMatch(facet -> facet.facet() == CruiseFacet.Facet.DURATION));
+        assertEquals(Set.copyOf(sailingsRepository.getCruiseFacets(FIRST_DAY, LAST_DAY, null, null, null, null, null, null)),
+                Set.copyOf(all));
+        assertEquals(Set.copyOf(sailingsRepository.getCruiseFacets(LocalDate.of(2030, 2, 1), LocalDate.of(2030, 8, 1),
+                null, 150_000L, 50_000L, BigDecimal.valueOf(3), null, null)), Set.copyOf(filtered));
+        assertEquals(indexIds(LocalDate.of(2030, 2, 1), LocalDate.of(2030, 8, 1), null, 150_000L, 50_000L,
+                BigDecimal.valueOf(3), null, null, null, null).size(), filtered.get(0).count());
+    }
+
+    private List<Long> indexIds(LocalDate departureDate, LocalDate returnDate, String destinationCode, Long priceUpTo,
+                                Long priceFrom, BigDecimal daysAtSeaMin, BigDecimal daysAtSeaMax, String departurePort,
+                                Long afterPrice, Long afterId) {
+        return cruiseSnapshotIndex.findCruise(departureDate, returnDate, destinationCode, priceUpTo, priceFrom, daysAtSeaMin,
+                        daysAtSeaMax, departurePort, afterPrice, afterId, LIMIT)
+                .orElseThrow()
+                .stream()
+                .map(CruiseSnapshotIndex.Hit::sailingId)
+                .toList();
+    }
+
+    private List<Long> repositoryIds(LocalDate departureDate, LocalDate returnDate, String destinationCode, Long priceUpTo,
+                                     Long priceFrom, BigDecimal daysAtSeaMin, BigDecimal daysAtSeaMax, String departurePort,
+                                     Long afterPrice, Long afterId) {
+        return sailingsRepository.findCruise(departureDate, returnDate, destinationCode, priceUpTo, priceFrom, daysAtSeaMin,
+                        daysAtSeaMax, departurePort, afterPrice, afterId, PageRequest.of(0, LIMIT))
+                .stream()
+                .map(SailingsEntity::getId)
+                .toList();
+    }
+}
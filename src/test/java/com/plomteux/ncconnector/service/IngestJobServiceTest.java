@@ -0,0 +1,107 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.model.IngestJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestJobServiceTest {
+    private final NCService ncService = mock(NCService.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch running = new CountDownLatch(1);
+    private IngestJobService ingestJobService;
+
+    @BeforeEach
+    void setup() {
+        ingestJobService = new IngestJobService(ncService);
+        ReflectionTestUtils.setField(ingestJobService, "JOBS_HISTORY", 20);
+    }
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        ingestJobService.shutdown();
+    }
+
+    @Test
+    void submit_whileRunningReturnsTheSameJob() throws Exception {
+        // Mocking
+        when(ncService.ingestCruisesDetails(any(IngestProgress.class))).thenAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return ResponseEntity.ok(IngestReport.builder().cruises(3).sailings(9).build());
+        });
+
+        // Execution
+        IngestJob first = ingestJobService.submit(IngestJob.TriggerEnum.SCHEDULED);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        IngestJob second = ingestJobService.submit(IngestJob.TriggerEnum.MANUAL);
+        release.countDown();
+        IngestJob finished = awaitFinished(first.getJobId());
+        IngestJob next = ingestJobService.submit(IngestJob.TriggerEnum.MANUAL);
+        awaitFinished(next.getJobId());
+
+        // Verification
+        assertEquals(first.getJobId(), second.getJobId());
+        assertEquals(IngestJob.TriggerEnum.SCHEDULED, second.getTrigger());
+        assertEquals(IngestJob.StatusEnum.SUCCEEDED, finished.getStatus());
+        assertEquals(IngestJob.PhaseEnum.DONE, finished.getPhase());
+        assertEquals(3, finished.getCruisesProcessed());
+        assertNotEquals(first.getJobId(), next.getJobId());
+        verify(ncService, times(2)).ingestCruisesDetails(any(IngestProgress.class));
+    }
+
+    @Test
+    void find_reportsProgressAndErrors() throws Exception {
+        // Mocking
+        when(ncService.ingestCruisesDetails(any(IngestProgress.class))).thenAnswer(invocation -> {
+            IngestProgress progress = invocation.getArgument(0);
+            progress.phase(IngestJob.PhaseEnum.PERSISTING);
+            progress.processed(10, 30);
+            running.countDown();
+            release.await();
+            throw new IllegalStateException("database unavailable");
+        });
+
+        // Execution
+        IngestJob submitted = ingestJobService.submit(IngestJob.TriggerEnum.MANUAL);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        IngestJob inProgress = ingestJobService.find(submitted.getJobId()).orElseThrow();
+        release.countDown();
+        IngestJob failed = awaitFinished(submitted.getJobId());
+
+        // Verification
+        assertEquals(IngestJob.StatusEnum.RUNNING, inProgress.getStatus());
+        assertEquals(IngestJob.PhaseEnum.PERSISTING, inProgress.getPhase());
+        assertEquals(10, inProgress.getCruisesProcessed());
+        assertEquals(30, inProgress.getSailingsProcessed());
+        assertTrue(inProgress.getCruisesPerSecond() > 0);
+        assertEquals(IngestJob.StatusEnum.FAILED, failed.getStatus());
+        assertEquals(List.of("database unavailable"), failed.getErrors());
+    }
+
+    private IngestJob awaitFinished(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        IngestJob job = ingestJobService.find(jobId).orElseThrow();
+        while (job.getFinishedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            job = ingestJobService.find(jobId).orElseThrow();
+        }
+        return job;
+    }
+}
@@ -0,0 +1,82 @@
+package com.plomteux.ncconnector.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.support.NclApiStub;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs one ingest against {@link NclApiStub} and checks the stage and repository metrics it leaves behind.
+ */
+@ActiveProfiles("test")
+@AutoConfigureObservability
+@SpringBootTest
+class IngestMetricsTest {
+    private static final NclApiStub STUB = new NclApiStub();
+    private static final int CRUISES = 20;
+    private static final int SAILINGS_PER_CRUISE = 3;
+
+    @Autowired
+    private NCService ncService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private PrometheusMeterRegistry prometheusMeterRegistry;
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry registry) {
+        registry.add("ncl.api.endpoint.itinaries", () -> STUB.url("/itineraries"));
+        registry.add("ncl.api.endpoint.prices", () -> STUB.url("/prices"));
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void ingest_recordsStageTimersCountersAndRepositoryTimers() throws Exception {
+        // Arrange
+        List<CruiseDetails> catalogue = SyntheticCatalogue.cruises(CRUISES, SAILINGS_PER_CRUISE, 7);
+        catalogue.get(0).getSailings().get(0).getPricing().get(0).setCode("PENTHOUSE");
+        STUB.itineraries(objectMapper.writeValueAsBytes(catalogue));
+
+        // Act
+        ncService.ingestCruisesDetails();
+
+        // Assert
+        for (String stage : List.of("fetch_itineraries", "fetch_prices", "map", "write", "price_drops", "finish")) {
+            assertEquals(1, meterRegistry.get("ncl.ingest.stage").tag("stage", stage).timer().count(), stage);
+        }
+        assertEquals(CRUISES, meterRegistry.get("ncl.ingest.cruises.mapped").counter().count());
+        assertEquals(CRUISES * SAILINGS_PER_CRUISE, meterRegistry.get("ncl.ingest.sailings.mapped").counter().count());
+        assertEquals(CRUISES * SAILINGS_PER_CRUISE, meterRegistry.get("ncl.ingest.rows.written").tag("table", "sailings").counter().count());
+        assertEquals(1, meterRegistry.get("ncl.ingest.pricing.unknown").tag("code", "PENTHOUSE").counter().count());
+        assertEquals(CRUISES, meterRegistry.get("ncl.ingest.last.cruises").gauge().value());
+        assertTrue(meterRegistry.get("spring.data.repository.invocations")
+                .tag("repository", "SailingsRepository")
+                .tag("method", "findSailingPricesValidOn")
+                .timer().count() > 0);
+        String scrape = prometheusMeterRegistry.scrape();
+        assertTrue(scrape.contains("ncl_ingest_stage_seconds_bucket{"));
+        assertTrue(scrape.contains("spring_data_repository_invocations_seconds_count{"));
+        assertTrue(scrape.contains("ncl_upstream_response_bytes_sum{"));
+    }
+}
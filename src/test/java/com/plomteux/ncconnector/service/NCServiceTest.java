@@ -1,15 +1,26 @@
 package com.plomteux.ncconnector.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.SailingsEntity;
 import com.plomteux.ncconnector.mapper.CruiseDetailsMapper;
 import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.model.Pricing;
+import com.plomteux.ncconnector.model.Sailings;
 import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.SnapshotBulkLoader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.Tuple;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.ParameterizedTypeReference;
@@ -19,14 +30,20 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -36,6 +53,8 @@ import static org.mockito.Mockito.*;
 class NCServiceTest {
     @Value("${ncl.api.endpoint.itinaries}")
     private String NCL_API_ENDPOINT_ITINARIES;
+    @Value("${ncl.api.endpoint.prices}")
+    private String NCL_API_ENDPOINT_PRICES;
 
     @Mock
     private RestTemplate restTemplate;
@@ -43,12 +62,44 @@ class NCServiceTest {
     private CruiseDetailsRepository cruiseDetailsRepository;
     @Mock
     private CruiseDetailsMapper cruiseDetailsMapper;
+    @Mock
+    private CodeDictionary codeDictionary;
+    @Mock
+    private CruiseUpsert cruiseUpsert;
+    @Mock
+    private SnapshotBulkLoader snapshotBulkLoader;
+    @Mock
+    private SailingsRepository sailingsRepository;
+    @Mock
+    private PriceDropRepository priceDropRepository;
+    @Mock
+    private PriceDropService priceDropService;
+    @Mock
+    private CruiseSnapshotIndex cruiseSnapshotIndex;
+    @Mock
+    private CruiseCatalogService cruiseCatalogService;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
     @InjectMocks
     private NCService ncService;
 
     @BeforeEach
     void setup() {
         ReflectionTestUtils.setField(ncService, "NCL_API_ENDPOINT_ITINARIES", NCL_API_ENDPOINT_ITINARIES);
+        ReflectionTestUtils.setField(ncService, "FEES_MULTIPLIER", new BigDecimal("27.10"));
+        ReflectionTestUtils.setField(ncService, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(ncService, "PRICES_BATCH_SIZE", 100);
+        ReflectionTestUtils.setField(ncService, "PRICES_PARALLELISM", 4);
+        ReflectionTestUtils.setField(ncService, "PRICES_MAX_ATTEMPTS", 3);
+        ReflectionTestUtils.setField(ncService, "PRICES_RETRY_BACKOFF_MS", 0L);
+        when(cruiseUpsert.updateStored(anyList())).thenAnswer(invocation -> {
+            List<CruiseDetailsEntity> cruises = invocation.getArgument(0);
+            return new CruiseUpsert.Upserted(cruises, cruises.size(), 0, 0);
+        });
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
     }
 
     @Test
@@ -123,6 +174,52 @@ class NCServiceTest {
         verify(cruiseDetailsRepository, times(1)).saveAllAndFlush(anyList());
     }
 
+    @Test
+    void testSaveCruiseDetailsListInDataBase_BulkLoadWhenSupported() {
+        // Mocking
+        ReflectionTestUtils.setField(ncService, "BULK_LOAD", true);
+        when(snapshotBulkLoader.isSupported()).thenReturn(true);
+        when(cruiseDetailsMapper.toCruiseDetailsEntity(any())).thenReturn(new CruiseDetailsEntity());
+        // Execution
+        ncService.saveCruiseDetailsListInDataBase(List.of(new CruiseDetails()));
+        // Verification
+        verify(snapshotBulkLoader, times(1)).load(anyList());
+        verify(cruiseDetailsRepository, never()).saveAllAndFlush(anyList());
+    }
+
+    @Test
+    void testSaveCruiseDetailsListInDataBase_FallsBackToJpa() {
+        // Mocking
+        ReflectionTestUtils.setField(ncService, "BULK_LOAD", true);
+        when(snapshotBulkLoader.isSupported()).thenReturn(false);
+        when(cruiseDetailsMapper.toCruiseDetailsEntity(any())).thenReturn(new CruiseDetailsEntity());
+        // Execution
+        ncService.saveCruiseDetailsListInDataBase(List.of(new CruiseDetails()));
+        // Verification
+        verify(snapshotBulkLoader, never()).load(anyList());
+        verify(cruiseDetailsRepository, times(1)).saveAllAndFlush(anyList());
+    }
+
+    @Test
+    void testApplyTotalPrices_RoundsTheExactSumOnce() {
+        // Mocking
+        Pricing pricing = new Pricing();
+        pricing.setCombinedPrice(new BigDecimal("100.005"));
+        Sailings sailing = new Sailings();
+        sailing.setPricing(List.of(pricing));
+        CruiseDetails cruise = new CruiseDetails();
+        cruise.setCode("C1");
+        cruise.setDuration(BigDecimal.valueOf(7));
+        cruise.setSailings(List.of(sailing));
+
+        // Execution
+        ncService.applyTotalPrices(List.of(cruise), Map.of("C1", new BigDecimal("10.005")));
+
+        // Verification
+        // 100.005 + 10.005 + 7 * 27.10 = 299.71, where rounding each part first gives 299.72
+        assertEquals(new BigDecimal("299.71"), pricing.getTotalPrice());
+    }
+
     @Test
     void testFetchTotalPrices() {
         // Mocking
@@ -139,4 +236,127 @@ class NCServiceTest {
         // Verification
         assertNotNull(result);
     }
+
+    @Test
+    void testIngestStream_PersistsInBoundedChunks() throws Exception {
+        // Mocking
+        ReflectionTestUtils.setField(ncService, "INGEST_CHUNK_SIZE", 2);
+        String cruise = "{\"code\":\"C%d\",\"duration\":7,\"sailings\":[{\"sailId\":%d,\"pricing\":[{\"code\":\"INSIDE\",\"status\":\"AVAILABLE\",\"combinedPrice\":100}]}]}";
+        String payload = "[" + String.format(cruise, 1, 1) + "," + String.format(cruise, 2, 2) + "," + String.format(cruise, 3, 3) + "]";
+        when(cruiseDetailsMapper.toCruiseDetailsEntity(any())).thenReturn(new CruiseDetailsEntity());
+        IngestRun run = IngestRun.start("streaming", null);
+
+        // Execution
+        ncService.ingestStream(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), run);
+        IngestReport report = run.finish();
+
+        // Verification
+        verify(cruiseDetailsRepository, times(2)).saveAllAndFlush(anyList());
+        assertEquals(3, report.getCruises());
+        assertEquals(3, report.getSailings());
+        assertEquals(2, report.getChunks());
+        assertTrue(report.getPeakHeapBytes() > 0);
+    }
+
+    @Test
+    void testIngestStream_LooksUpPreviousPricesPerChunk() throws Exception {
+        // Mocking
+        ReflectionTestUtils.setField(ncService, "INGEST_CHUNK_SIZE", 2);
+        ReflectionTestUtils.setField(ncService, "PRICE_DROPS", true);
+        String cruise = "{\"code\":\"C%d\",\"duration\":7,\"sailings\":[{\"sailId\":%d,\"pricing\":[{\"code\":\"INSIDE\",\"status\":\"AVAILABLE\",\"combinedPrice\":100}]}]}";
+        String payload = "[" + String.format(cruise, 1, 1) + "," + String.format(cruise, 2, 2) + "," + String.format(cruise, 3, 3) + "]";
+        when(cruiseDetailsMapper.toCruiseDetailsEntity(any())).thenAnswer(invocation -> {
+            CruiseDetails details = invocation.getArgument(0);
+            SailingsEntity sailing = new SailingsEntity();
+            sailing.setSailId(details.getSailings().get(0).getSailId());
+            sailing.setPackageId(BigDecimal.ONE);
+            CruiseDetailsEntity entity = new CruiseDetailsEntity();
+            entity.setSailingsEntities(List.of(sailing));
+            return entity;
+        });
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+
+        // Execution
+        ncService.ingestStream(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), IngestRun.start("streaming", null));
+
+        // Verification
+        verify(sailingsRepository).findSailingPricesValidOn(yesterday, Set.of(BigDecimal.valueOf(1), BigDecimal.valueOf(2)), Set.of(BigDecimal.ONE));
+        verify(sailingsRepository).findSailingPricesValidOn(yesterday, Set.of(BigDecimal.valueOf(3)), Set.of(BigDecimal.ONE));
+        verify(sailingsRepository, never()).findSailingPricesValidOn(any());
+    }
+
+    @Test
+    void testFetchTotalPrices_FailingBatchOnlyLosesItsOwnCruises() {
+        // Mocking
+        ReflectionTestUtils.setField(ncService, "NCL_API_ENDPOINT_PRICES", NCL_API_ENDPOINT_PRICES);
+        ReflectionTestUtils.setField(ncService, "PRICES_BATCH_SIZE", 2);
+        List<CruiseDetails> cruiseDetailsList = new ArrayList<>();
+        for (String code : List.of("A", "B", "C", "D", "E")) {
+            CruiseDetails cruise = new CruiseDetails();
+            cruise.setCode(code);
+            cruiseDetailsList.add(cruise);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        when(restTemplate.postForEntity(anyString(), anyList(), eq(JsonNode.class))).thenAnswer(invocation -> {
+            List<String> codes = invocation.getArgument(1);
+            if (codes.contains("C")) {
+                throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+            }
+            StringBuilder prices = new StringBuilder("{\"prices\":[");
+            for (String code : codes) {
+                prices.append(prices.length() > 11 ? "," : "")
+                        .append("{\"cruiseCode\":\"").append(code).append("\",\"taxesAndFees\":{\"amount\":10}}");
+            }
+            return ResponseEntity.ok(objectMapper.readTree(prices.append("]}").toString()));
+        });
+
+        // Execution
+        Map<String, BigDecimal> result = ncService.fetchTotalPrices(cruiseDetailsList);
+
+        // Verification
+        assertEquals(Map.of("A", BigDecimal.TEN, "B", BigDecimal.TEN, "E", BigDecimal.TEN), result);
+        // 2 successful batches plus 3 attempts of the failing one
+        verify(restTemplate, times(5)).postForEntity(anyString(), anyList(), eq(JsonNode.class));
+    }
+
+    @Test
+    void testSailingsDelta_WritesOnlyChangedSailingsAndClosesReplacedOnes() {
+        // Mocking
+        List<Tuple> openRows = List.of(
+                openRow(5L, 1, 10_000L),
+                openRow(6L, 2, 20_000L),
+                openRow(7L, 3, 30_000L));
+        when(sailingsRepository.findOpenSailingPrices(SailingsEntity.OPEN_END)).thenReturn(openRows);
+        CruiseDetailsEntity cruise = new CruiseDetailsEntity();
+        SailingsEntity changed = sailing(2, 15_000L);
+        cruise.setSailingsEntities(List.of(sailing(1, 10_000L), changed));
+
+        // Execution
+        SailingsDelta delta = SailingsDelta.load(sailingsRepository);
+        delta.apply(List.of(cruise));
+        int closed = delta.finish(sailingsRepository, priceDropRepository, LocalDate.of(2030, 1, 2));
+
+        // Verification
+        assertEquals(List.of(changed), cruise.getSailingsEntities());
+        assertEquals(SailingsEntity.OPEN_END, changed.getValidTo());
+        assertEquals(1, delta.getUnchanged());
+        assertEquals(2, closed);
+        verify(sailingsRepository).closeSailings(argThat(ids -> ids.size() == 2 && ids.containsAll(List.of(6L, 7L))), eq(LocalDate.of(2030, 1, 1)));
+    }
+
+    private static Tuple openRow(Long id, int sailId, Long inside) {
+        Object[] values = {id, BigDecimal.valueOf(sailId), "B", BigDecimal.TEN, null, inside, null, null, null, null, null, null};
+        Tuple tuple = mock(Tuple.class);
+        when(tuple.get(anyInt(), any())).thenAnswer(invocation -> values[(int) invocation.getArgument(0)]);
+        return tuple;
+    }
+
+    private static SailingsEntity sailing(int sailId, Long inside) {
+        SailingsEntity sailing = new SailingsEntity();
+        sailing.setSailId(BigDecimal.valueOf(sailId));
+        sailing.setBundleType("B");
+        sailing.setPackageId(new BigDecimal("10"));
+        sailing.setInside(inside);
+        return sailing;
+    }
 }
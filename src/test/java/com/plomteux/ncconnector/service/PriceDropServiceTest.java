@@ -0,0 +1,70 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.PriceDropEntity;
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+
+@ActiveProfiles("test")
+@SpringBootTest
+class PriceDropServiceTest {
+    @Mock
+    private PriceDropRepository priceDropRepository;
+    @Mock
+    private SailingsRepository sailingsRepository;
+    @InjectMocks
+    private PriceDropService priceDropService;
+
+    @Test
+    void recordPriceDrops_shouldStoreOnlyRoomTypesThatGotCheaper() {
+        // Arrange
+        SailingsEntity yesterday = sailing(100_000L, 150_000L, 200_000L);
+        SailingsEntity today = sailing(90_000L, 160_000L, 200_000L);
+        CruiseDetailsEntity cruise = new CruiseDetailsEntity();
+        cruise.setSailingsEntities(List.of(today));
+        SailingPrices previous = SailingPrices.of(yesterday);
+        LocalDate publishedDate = LocalDate.of(2030, 1, 2);
+
+        // Act
+        priceDropService.recordPriceDrops(List.of(cruise), Map.of(previous.key(), previous), publishedDate);
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PriceDropEntity>> captor = ArgumentCaptor.forClass(List.class);
+        verify(priceDropRepository).saveAll(captor.capture());
+        List<PriceDropEntity> drops = captor.getValue();
+        assertEquals(1, drops.size());
+        PriceDropEntity drop = drops.get(0);
+        assertEquals(RoomType.INSIDE, drop.getRoomType());
+        assertEquals(10_000L, drop.getPriceDifference());
+        assertEquals(publishedDate, drop.getPublishedDate());
+        assertEquals(today, drop.getSailingsEntity());
+    }
+
+    private static SailingsEntity sailing(Long inside, Long oceanView, Long balcony) {
+        SailingsEntity sailing = new SailingsEntity();
+        sailing.setSailId(BigDecimal.ONE);
+        sailing.setBundleType("B");
+        sailing.setPackageId(BigDecimal.TEN);
+        sailing.setInside(inside);
+        sailing.setOceanView(oceanView);
+        sailing.setBalcony(balcony);
+        return sailing;
+    }
+}
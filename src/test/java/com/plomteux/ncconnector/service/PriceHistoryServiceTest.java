@@ -0,0 +1,122 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.entity.SailingsRollupEntity;
+import com.plomteux.ncconnector.model.PriceHistory;
+import com.plomteux.ncconnector.model.PriceHistorySeries;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.SailingsRollupRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ActiveProfiles("test")
+@SpringBootTest
+class PriceHistoryServiceTest {
+    private static final BigDecimal SAIL_ID = new BigDecimal("7");
+    // a Monday
+    private static final LocalDate WEEK = LocalDate.of(2030, 1, 7);
+
+    @Autowired
+    private PriceHistoryService priceHistoryService;
+    @Autowired
+    private SailingsRepository sailingsRepository;
+    @Autowired
+    private SailingsRollupRepository sailingsRollupRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setup() {
+        save(BigDecimal.ONE, WEEK, WEEK.plusDays(2), 100_000L, 200_000L);
+        save(BigDecimal.ONE, WEEK.plusDays(3), WEEK.plusDays(9), 90_000L, null);
+        save(BigDecimal.TEN, WEEK.plusDays(1), SailingsEntity.OPEN_END, 95_000L, null);
+        SailingsRollupEntity rollup = new SailingsRollupEntity();
+        rollup.setSailId(SAIL_ID);
+        rollup.setBundleType("B");
+        rollup.setPackageId(BigDecimal.ONE);
+        rollup.setRoomType(RoomType.INSIDE);
+        rollup.setWeekStart(WEEK.minusWeeks(1));
+        rollup.setMinPrice(110_000L);
+        rollup.setMaxPrice(130_000L);
+        rollup.setLastPrice(120_000L);
+        rollup.setLastDate(WEEK.minusDays(1));
+        sailingsRollupRepository.save(rollup);
+    }
+
+    @AfterEach
+    void cleanup() {
+        sailingsRepository.deleteAllInBatch();
+        sailingsRollupRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void getPriceHistory_weeklyBucketsOfEveryPricedRoomType() {
+        // Act
+        PriceHistory history = priceHistoryService.getPriceHistory(SAIL_ID, PriceHistory.BucketEnum.WEEK,
+                WEEK.minusDays(6), WEEK.plusDays(13), null);
+
+        // Assert
+        assertEquals(List.of(WEEK.minusWeeks(1), WEEK, WEEK.plusWeeks(1)), history.getBucketStarts());
+        assertEquals(2, history.getSeries().size());
+        PriceHistorySeries inside = history.getSeries().get(0);
+        assertEquals("INSIDE", inside.getRoomType());
+        assertEquals(prices("1100.00", "900.00", "900.00"), inside.getMin());
+        assertEquals(prices("1300.00", "1000.00", "950.00"), inside.getMax());
+        // the two packages end the middle week at the same day: the lowest price wins
+        assertEquals(prices("1200.00", "900.00", "950.00"), inside.getLast());
+        PriceHistorySeries balcony = history.getSeries().get(1);
+        assertEquals("BALCONY", balcony.getRoomType());
+        assertEquals(prices(null, "2000.00", null), balcony.getLast());
+    }
+
+    @Test
+    void getPriceHistory_dailyBucketsOfOneRoomType() {
+        // Act
+        PriceHistory history = priceHistoryService.getPriceHistory(SAIL_ID, PriceHistory.BucketEnum.DAY,
+                WEEK.plusDays(1), WEEK.plusDays(3), RoomType.INSIDE);
+
+        // Assert
+        assertEquals(3, history.getBucketStarts().size());
+        assertEquals(1, history.getSeries().size());
+        assertEquals(prices("950.00", "950.00", "900.00"), history.getSeries().get(0).getMin());
+        assertEquals(prices("950.00", "950.00", "900.00"), history.getSeries().get(0).getLast());
+    }
+
+    @Test
+    void getPriceHistory_rejectsTooManyBuckets() {
+        // Act and Assert
+        assertThrows(IllegalArgumentException.class, () -> priceHistoryService.getPriceHistory(SAIL_ID,
+                PriceHistory.BucketEnum.DAY, WEEK, WEEK.plusDays(PriceHistoryService.MAX_BUCKETS), null));
+    }
+
+    private void save(BigDecimal packageId, LocalDate publishedDate, LocalDate validTo, Long inside, Long balcony) {
+        SailingsEntity sailing = new SailingsEntity();
+        sailing.setSailId(SAIL_ID);
+        sailing.setBundleType("B");
+        sailing.setPackageId(packageId);
+        sailing.setInside(inside);
+        sailing.setBalcony(balcony);
+        sailing.setValidTo(validTo);
+        sailing = sailingsRepository.save(sailing);
+        // publishedDate is set to today on persist
+        jdbcTemplate.update("UPDATE sailings_entity SET published_date = ? WHERE id = ?", publishedDate, sailing.getId());
+    }
+
+    private static List<BigDecimal> prices(String... values) {
+        return Arrays.stream(values).map(value -> value != null ? new BigDecimal(value) : null).toList();
+    }
+}
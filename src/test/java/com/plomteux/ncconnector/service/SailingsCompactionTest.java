@@ -0,0 +1,128 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.entity.SailingsRollupEntity;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.SailingsRollupRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = "ncl.sailings.retention-days=30")
+class SailingsCompactionTest {
+    // a Monday
+    private static final LocalDate WEEK = LocalDate.of(2030, 1, 7);
+    private static final LocalDate TODAY = LocalDate.of(2030, 6, 1);
+
+    @Autowired
+    private SailingsCompaction sailingsCompaction;
+    @Autowired
+    private SailingsRepository sailingsRepository;
+    @Autowired
+    private SailingsRollupRepository sailingsRollupRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanup() {
+        sailingsRepository.deleteAllInBatch();
+        sailingsRollupRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void compact_rollsUpExpiredRowsIntoWeeksAndKeepsRecentOnes() {
+        // Arrange
+        save(WEEK, WEEK.plusDays(1), 100_000L);
+        save(WEEK.plusDays(2), WEEK.plusDays(8), 80_000L);
+        save(WEEK.plusDays(9), SailingsEntity.OPEN_END, 90_000L);
+        save(TODAY.minusDays(3), TODAY.minusDays(1), 70_000L);
+
+        // Act
+        int compacted = sailingsCompaction.compact(TODAY);
+
+        // Assert
+        assertEquals(2, compacted);
+        assertEquals(2, sailingsRepository.count());
+        List<SailingsRollupEntity> rollups = sailingsRollupRepository.findAll().stream()
+                .sorted(Comparator.comparing(SailingsRollupEntity::getWeekStart))
+                .toList();
+        assertEquals(2, rollups.size());
+        SailingsRollupEntity first = rollups.get(0);
+        assertEquals(WEEK, first.getWeekStart());
+        assertEquals(RoomType.INSIDE, first.getRoomType());
+        assertEquals(80_000L, first.getMinPrice());
+        assertEquals(100_000L, first.getMaxPrice());
+        assertEquals(80_000L, first.getLastPrice());
+        assertEquals(WEEK.plusDays(6), first.getLastDate());
+        SailingsRollupEntity second = rollups.get(1);
+        assertEquals(WEEK.plusWeeks(1), second.getWeekStart());
+        assertEquals(80_000L, second.getMinPrice());
+        assertEquals(80_000L, second.getLastPrice());
+        assertEquals(WEEK.plusDays(8), second.getLastDate());
+    }
+
+    @Test
+    void compact_mergesRowsOfAWeekCompactedInAnotherRun() {
+        // Arrange
+        save(WEEK, WEEK.plusDays(1), 100_000L);
+        sailingsCompaction.compact(TODAY);
+        save(WEEK.plusDays(2), WEEK.plusDays(3), 120_000L);
+
+        // Act
+        sailingsCompaction.compact(TODAY);
+
+        // Assert
+        List<SailingsRollupEntity> rollups = sailingsRollupRepository.findAll();
+        assertEquals(1, rollups.size());
+        assertEquals(100_000L, rollups.get(0).getMinPrice());
+        assertEquals(120_000L, rollups.get(0).getMaxPrice());
+        assertEquals(120_000L, rollups.get(0).getLastPrice());
+        assertEquals(0, sailingsRepository.count());
+    }
+
+    @Test
+    void compact_rollsUpEverySailIdAcrossPages() {
+        // Arrange
+        for (int sailId = 1; sailId <= 450; sailId++) {
+            save(BigDecimal.valueOf(sailId), WEEK, WEEK.plusDays(1), 100_000L + sailId);
+        }
+
+        // Act
+        int compacted = sailingsCompaction.compact(TODAY);
+
+        // Assert
+        assertEquals(450, compacted);
+        assertEquals(0, sailingsRepository.count());
+        List<SailingsRollupEntity> rollups = sailingsRollupRepository.findAll();
+        assertEquals(450, rollups.size());
+        assertEquals(450, rollups.stream().map(SailingsRollupEntity::getSailId).distinct().count());
+    }
+
+    private void save(LocalDate publishedDate, LocalDate validTo, Long inside) {
+        save(BigDecimal.ONE, publishedDate, validTo, inside);
+    }
+
+    private void save(BigDecimal sailId, LocalDate publishedDate, LocalDate validTo, Long inside) {
+        SailingsEntity sailing = new SailingsEntity();
+        sailing.setSailId(sailId);
+        sailing.setBundleType("B");
+        sailing.setPackageId(BigDecimal.TEN);
+        sailing.setInside(inside);
+        sailing.setValidTo(validTo);
+        sailing = sailingsRepository.save(sailing);
+        // publishedDate is set to today on persist
+        jdbcTemplate.update("UPDATE sailings_entity SET published_date = ? WHERE id = ?", publishedDate, sailing.getId());
+    }
+}
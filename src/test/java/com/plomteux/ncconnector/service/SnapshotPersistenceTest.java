@@ -0,0 +1,250 @@
+package com.plomteux.ncconnector.service;
+
+import com.plomteux.ncconnector.entity.CruiseDetailsEntity;
+import com.plomteux.ncconnector.entity.RoomType;
+import com.plomteux.ncconnector.entity.SailingsEntity;
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.DestinationRepository;
+import com.plomteux.ncconnector.repository.PortsOfCallEntityRepository;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.SnapshotBulkLoader;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes a synthetic daily snapshot and reports the JDBC statements it took. Runs against H2 by default; pass
+ * {@code -Dspring.datasource.url=jdbc:postgresql://...} (plus username, password and driver) to measure PostgreSQL.
+ */
+@Slf4j
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class SnapshotPersistenceTest {
+    private static final int CRUISES = 200;
+    private static final int SAILINGS_PER_CRUISE = 20;
+
+    @Autowired
+    private NCService ncService;
+    @Autowired
+    private CruiseDetailsRepository cruiseDetailsRepository;
+    @Autowired
+    private SailingsRepository sailingsRepository;
+    @Autowired
+    private DestinationRepository destinationRepository;
+    @Autowired
+    private PortsOfCallEntityRepository portsOfCallEntityRepository;
+    @Autowired
+    private PriceDropRepository priceDropRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private SnapshotBulkLoader snapshotBulkLoader;
+
+    @AfterEach
+    void cleanup() {
+        ReflectionTestUtils.setField(ncService, "BULK_LOAD", false);
+        ReflectionTestUtils.setField(ncService, "snapshotBulkLoader", snapshotBulkLoader);
+        priceDropRepository.deleteAllInBatch();
+        sailingsRepository.deleteAllInBatch();
+        cruiseDetailsRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void saveCruiseDetailsListInDataBase_batchesInserts() {
+        // Arrange
+        List<CruiseDetails> snapshot = pricedSnapshot();
+        long dictionaryRows = dictionaryRows();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // Act
+        long start = System.nanoTime();
+        ncService.saveCruiseDetailsListInDataBase(snapshot);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Assert
+        long rows = CRUISES * (1L + SAILINGS_PER_CRUISE) + dictionaryRows() - dictionaryRows;
+        long links = CRUISES * (2L + 5);
+        log.info("Snapshot of {} rows and {} links written in {} ms with {} prepared statements",
+                rows, links, elapsedMillis, statistics.getPrepareStatementCount());
+        assertEquals(rows, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() < (rows + links) / 10,
+                "expected batched inserts, got " + statistics.getPrepareStatementCount() + " statements for " + (rows + links) + " rows");
+    }
+
+    @Test
+    void deltaIngest_unchangedSnapshotWritesNoSailingsAndKeepsQueryResults() {
+        // Arrange
+        LocalDate today = LocalDate.now();
+        saveDelta(pricedSnapshot());
+        long sailingRows = sailingsRepository.count();
+        int found = findAllCruises().size();
+
+        // Act
+        saveDelta(pricedSnapshot());
+
+        // Assert
+        assertTrue(found > 0);
+        assertEquals(sailingRows, sailingsRepository.count());
+        assertEquals(found, findAllCruises().size());
+        assertEquals(sailingRows, sailingsRepository.findSailingPricesValidOn(today).size());
+        assertTrue(sailingsRepository.getSailingsPriceDrops(today.minusDays(1), today, BigDecimal.ZERO, RoomType.INSIDE, null, null, Pageable.unpaged()).isEmpty());
+        assertEquals(0, priceDropRepository.count());
+    }
+
+    @Test
+    void deltaIngest_secondRunOfTheDayReplacesTheRowsOfTheFirst() {
+        // Arrange
+        LocalDate today = LocalDate.now();
+        saveDelta(pricedSnapshot(42));
+        long sailingRows = sailingsRepository.count();
+
+        // Act
+        saveDelta(pricedSnapshot(43));
+
+        // Assert
+        assertEquals(sailingRows, sailingsRepository.count());
+        assertEquals(sailingRows, sailingsRepository.findSailingPricesValidOn(today).size());
+        assertEquals(Set.copyOf(sailingsRepository.findSailingPricesValidOn(today).stream().map(row -> row.get(5, Long.class)).toList()),
+                Set.copyOf(sailingsRepository.findOpenSailingPrices(SailingsEntity.OPEN_END).stream().map(row -> row.get(5, Long.class)).toList()));
+    }
+
+    @Test
+    void saveCruiseDetailsListInDataBase_keepsOneCruiseRowPerCode() {
+        // Arrange
+        ncService.saveCruiseDetailsListInDataBase(pricedSnapshot());
+        long cruiseRows = cruiseDetailsRepository.count();
+        long sailingRows = sailingsRepository.count();
+        double destinationLinks = rowsWritten("cruise_destination");
+
+        // Act
+        ncService.saveCruiseDetailsListInDataBase(pricedSnapshot());
+
+        // Assert
+        assertEquals(destinationLinks, rowsWritten("cruise_destination"));
+        assertEquals(CRUISES, cruiseRows);
+        assertEquals(cruiseRows, cruiseDetailsRepository.count());
+        assertEquals(2 * sailingRows, sailingsRepository.count());
+    }
+
+    @Test
+    void saveCruiseDetailsListInDataBase_rollsBackTheUpsertWhenTheSailingsInsertFails() {
+        // Arrange
+        ncService.saveCruiseDetailsListInDataBase(pricedSnapshot());
+        long sailingRows = sailingsRepository.count();
+        BigDecimal duration = cruiseDetailsRepository.findByCode("SYN0").orElseThrow().getDuration();
+        List<CruiseDetails> next = pricedSnapshot();
+        next.forEach(cruise -> cruise.setDuration(cruise.getDuration().add(BigDecimal.ONE)));
+        // longer than the column
+        next.get(CRUISES - 1).getSailings().get(0).setBundleType("X".repeat(300));
+
+        // Act
+        assertThrows(RuntimeException.class, () -> ncService.saveCruiseDetailsListInDataBase(next));
+
+        // Assert
+        assertEquals(sailingRows, sailingsRepository.count());
+        assertEquals(0, duration.compareTo(cruiseDetailsRepository.findByCode("SYN0").orElseThrow().getDuration()));
+    }
+
+    @Test
+    void saveCruiseDetailsListInDataBase_secondRunOfTheDayDoesNotRepeatPriceDrops() {
+        // Arrange
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        ncService.saveCruiseDetailsListInDataBase(pricedSnapshot(42));
+        jdbcTemplate.update("UPDATE sailings_entity SET published_date = ?, valid_to = ?", yesterday, yesterday);
+        ncService.saveCruiseDetailsListInDataBase(pricedSnapshot(43), IngestRun.start("materialized", null));
+        long drops = priceDropRepository.count();
+
+        // Act
+        ncService.saveCruiseDetailsListInDataBase(pricedSnapshot(43), IngestRun.start("materialized", null));
+
+        // Assert
+        assertTrue(drops > 0);
+        assertEquals(drops, priceDropRepository.count());
+    }
+
+    @Test
+    void bulkLoad_seesDestinationCodesInternedInTheSameTransaction() {
+        // Arrange
+        AtomicLong visibleCodes = new AtomicLong();
+        // H2 has no COPY, so the loader only looks for the new code on the transaction's connection
+        ReflectionTestUtils.setField(ncService, "BULK_LOAD", true);
+        ReflectionTestUtils.setField(ncService, "snapshotBulkLoader", new SnapshotBulkLoader(jdbcTemplate) {
+            @Override
+            public boolean isSupported() {
+                return true;
+            }
+
+            @Override
+            public void load(List<CruiseDetailsEntity> cruises) {
+                visibleCodes.set(jdbcTemplate.queryForObject(
+                        "SELECT COUNT(*) FROM destination_code_entity WHERE destination_code = ?", Long.class, "ANTARCTICA"));
+            }
+        });
+        List<CruiseDetails> snapshot = pricedSnapshot();
+        snapshot.get(0).setDestinationCodes(List.of("ANTARCTICA"));
+
+        // Act
+        ncService.saveCruiseDetailsListInDataBase(snapshot);
+
+        // Assert
+        assertEquals(1, visibleCodes.get());
+    }
+
+    private void saveDelta(List<CruiseDetails> snapshot) {
+        SailingsDelta delta = SailingsDelta.load(sailingsRepository);
+        ncService.saveCruiseDetailsListInDataBase(snapshot, IngestRun.start("delta", delta));
+        delta.finish(sailingsRepository, priceDropRepository, LocalDate.now());
+    }
+
+    private double rowsWritten(String table) {
+        return meterRegistry.get("ncl.ingest.rows.written").tag("table", table).counter().count();
+    }
+
+    private long dictionaryRows() {
+        return destinationRepository.count() + portsOfCallEntityRepository.count();
+    }
+
+    private List<?> findAllCruises() {
+        return sailingsRepository.findCruise(LocalDate.of(2000, 1, 1), LocalDate.of(2100, 1, 1), "CARIBBEAN",
+                null, null, null, null, null, null, null, Pageable.unpaged());
+    }
+
+    private static List<CruiseDetails> pricedSnapshot() {
+        return pricedSnapshot(42);
+    }
+
+    private static List<CruiseDetails> pricedSnapshot(long seed) {
+        List<CruiseDetails> snapshot = SyntheticCatalogue.cruises(CRUISES, SAILINGS_PER_CRUISE, seed);
+        snapshot.forEach(cruise -> cruise.getSailings().forEach(sailing ->
+                sailing.getPricing().forEach(pricing -> pricing.setTotalPrice(pricing.getCombinedPrice()))));
+        return snapshot;
+    }
+}
@@ -0,0 +1,162 @@
+package com.plomteux.ncconnector.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plomteux.ncconnector.entity.UpstreamSnapshotEntity;
+import com.plomteux.ncconnector.repository.CruiseDetailsRepository;
+import com.plomteux.ncconnector.repository.PriceDropRepository;
+import com.plomteux.ncconnector.repository.SailingsRepository;
+import com.plomteux.ncconnector.repository.UpstreamSnapshotRepository;
+import com.plomteux.ncconnector.support.NclApiStub;
+import com.plomteux.ncconnector.support.SyntheticCatalogue;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ingests the same and then a changed catalogue from {@link NclApiStub} with fingerprinting on.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = "ncl.ingest.fingerprint.enabled=true")
+class UpstreamFingerprintTest {
+    private static final NclApiStub STUB = new NclApiStub();
+    private static final int CRUISES = 40;
+
+    @Autowired
+    private NCService ncService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CruiseDetailsRepository cruiseDetailsRepository;
+    @Autowired
+    private SailingsRepository sailingsRepository;
+    @Autowired
+    private PriceDropRepository priceDropRepository;
+    @Autowired
+    private UpstreamSnapshotRepository upstreamSnapshotRepository;
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry registry) {
+        registry.add("ncl.api.endpoint.itinaries", () -> STUB.url("/itineraries"));
+        registry.add("ncl.api.endpoint.prices", () -> STUB.url("/prices"));
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @AfterEach
+    void cleanup() {
+        STUB.taxesAndFees(NclApiStub.TAXES_AND_FEES);
+        upstreamSnapshotRepository.deleteAllInBatch();
+        priceDropRepository.deleteAllInBatch();
+        sailingsRepository.deleteAllInBatch();
+        cruiseDetailsRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void unchangedCatalogueWithEtag_isCarriedForwardAfterVerifyingPrices() throws Exception {
+        // Arrange
+        STUB.etags(true);
+        long rows = loadYesterday(catalogue(1));
+
+        // Act
+        IngestReport report = ncService.ingestCruisesDetails().getBody();
+
+        // Assert
+        assertCarriedForward(rows, report);
+    }
+
+    @Test
+    void unchangedCatalogueWithoutEtag_isRecognisedByItsHash() throws Exception {
+        // Arrange
+        STUB.etags(false);
+        long rows = loadYesterday(catalogue(1));
+
+        // Act
+        IngestReport report = ncService.ingestCruisesDetails().getBody();
+
+        // Assert
+        assertCarriedForward(rows, report);
+    }
+
+    @Test
+    void changedCatalogue_isLoaded() throws Exception {
+        // Arrange
+        STUB.etags(true);
+        long rows = loadYesterday(catalogue(1));
+        STUB.itineraries(catalogue(2));
+
+        // Act
+        IngestReport report = ncService.ingestCruisesDetails().getBody();
+
+        // Assert
+        assertEquals(CRUISES, report.getCruises());
+        assertEquals(0, report.getCarriedForwardSailings());
+        assertTrue(STUB.calls().size() > 1);
+        assertTrue(sailingsRepository.count() > rows);
+        assertFalse(upstreamSnapshotRepository.findFirstByOrderByPublishedDateDescIdDesc().map(UpstreamSnapshotEntity::getCarriedForward).orElseThrow());
+    }
+
+    @Test
+    void changedTaxesWithUnchangedItineraries_isLoaded() throws Exception {
+        // Arrange
+        STUB.etags(true);
+        long rows = loadYesterday(catalogue(1));
+        STUB.taxesAndFees(NclApiStub.TAXES_AND_FEES.add(BigDecimal.TEN));
+
+        // Act
+        IngestReport report = ncService.ingestCruisesDetails().getBody();
+
+        // Assert
+        assertEquals(CRUISES, report.getCruises());
+        assertEquals(0, report.getCarriedForwardSailings());
+        assertEquals(2 * rows, sailingsRepository.count());
+    }
+
+    private void assertCarriedForward(long rows, IngestReport report) {
+        LocalDate today = LocalDate.now();
+        assertEquals(List.of("/itineraries", "/prices"), STUB.calls().stream().map(NclApiStub.Call::path).toList());
+        assertEquals(0, report.getCruises());
+        assertEquals(rows, report.getCarriedForwardSailings());
+        assertEquals(rows, sailingsRepository.count());
+        assertEquals(rows, sailingsRepository.findSailingPricesValidOn(today).size());
+        UpstreamSnapshotEntity marker = upstreamSnapshotRepository.findFirstByOrderByPublishedDateDescIdDesc().orElseThrow();
+        assertEquals(today, marker.getPublishedDate());
+        assertTrue(marker.getCarriedForward());
+    }
+
+    /**
+     * Loads {@code itineraries} and moves the result to yesterday, as if it had been ingested then.
+     */
+    private long loadYesterday(byte[] itineraries) {
+        LocalDate today = LocalDate.now();
+        LocalDate yesterday = today.minusDays(1);
+        STUB.itineraries(itineraries);
+        ncService.ingestCruisesDetails();
+        jdbcTemplate.update("UPDATE sailings_entity SET published_date = ?, valid_to = ? WHERE valid_to = ?", yesterday, yesterday, today);
+        jdbcTemplate.update("UPDATE upstream_snapshot_entity SET published_date = ?", yesterday);
+        STUB.calls().clear();
+        return sailingsRepository.count();
+    }
+
+    private byte[] catalogue(long seed) throws Exception {
+        return objectMapper.writeValueAsBytes(SyntheticCatalogue.cruises(CRUISES, 3, seed));
+    }
+}
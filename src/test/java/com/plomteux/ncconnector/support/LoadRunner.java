@@ -0,0 +1,95 @@
+package com.plomteux.ncconnector.support;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Sends a fixed number of requests from a fixed number of threads, each thread taking the next request as soon as
+ * its previous one answered, and summarises latency and throughput. Each run starts with unmeasured warm-up
+ * requests.
+ */
+public final class LoadRunner {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final int concurrency;
+    private final int warmupRequests;
+
+    public record Result(String name, int requests, int errors, double p50Millis, double p99Millis, double requestsPerSecond) {
+        @Override
+        public String toString() {
+            return String.format("%-20s %8d req %6d err   p50 %8.2f ms   p99 %8.2f ms   %9.1f req/s",
+                    name, requests, errors, p50Millis, p99Millis, requestsPerSecond);
+        }
+    }
+
+    public LoadRunner(int concurrency, int warmupRequests) {
+        this.concurrency = concurrency;
+        this.warmupRequests = warmupRequests;
+    }
+
+    /**
+     * Sends {@code requests} requests built by {@code request} from their index; any status but 200 is an error.
+     */
+    public Result run(String name, int requests, IntFunction<HttpRequest> request) throws Exception {
+        send(warmupRequests, request);
+        return send(requests, request).summary(name);
+    }
+
+    private record Measurements(int requests, long[] latencies, int errors, long elapsedNanos) {
+        Result summary(String name) {
+            Arrays.sort(latencies);
+            return new Result(name, requests, errors, percentile(latencies, 0.50), percentile(latencies, 0.99),
+                    requests * 1e9 / elapsedNanos);
+        }
+    }
+
+    private Measurements send(int requests, IntFunction<HttpRequest> request) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> workers = new ArrayList<>(concurrency);
+            for (int w = 0; w < concurrency; w++) {
+                workers.add(executor.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request.apply(i), HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Measurements(requests, latencies, errors.get(), System.nanoTime() - start);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
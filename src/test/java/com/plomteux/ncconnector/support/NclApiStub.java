@@ -0,0 +1,137 @@
+package com.plomteux.ncconnector.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local imitation of the upstream NCL API: {@code GET /itineraries} returns the configured catalogue, optionally
+ * with an {@code ETag}, {@code POST /prices} answers taxes and fees for the posted cruise codes and
+ * {@code GET /slow} stalls. Responses are gzipped when the client accepts it, and every call is recorded.
+ */
+public final class NclApiStub implements AutoCloseable {
+    public static final BigDecimal TAXES_AND_FEES = new BigDecimal("123.45");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final List<Call> calls = new CopyOnWriteArrayList<>();
+    private volatile byte[] itineraries = "[]".getBytes();
+    private volatile long slowMillis = 5_000;
+    private volatile boolean etags;
+    private volatile BigDecimal taxesAndFees = TAXES_AND_FEES;
+
+    /**
+     * One request as the stub saw it: the client port identifies the connection it came in on.
+     */
+    public record Call(String path, int clientPort, boolean gzipped) {
+    }
+
+    public NclApiStub() {
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/itineraries", exchange -> {
+            byte[] body = itineraries;
+            String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+            if (etags) {
+                exchange.getResponseHeaders().add("ETag", etag);
+            }
+            if (etags && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                calls.add(new Call(exchange.getRequestURI().getPath(), exchange.getRemoteAddress().getPort(), false));
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            respond(exchange, body);
+        });
+        server.createContext("/prices", exchange -> respond(exchange, prices(objectMapper.readTree(exchange.getRequestBody()))));
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(slowMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, "{}".getBytes());
+        });
+        server.start();
+    }
+
+    public String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    public void itineraries(byte[] json) {
+        this.itineraries = json;
+    }
+
+    /**
+     * Whether {@code /itineraries} sends an {@code ETag} and answers {@code If-None-Match} with 304.
+     */
+    public void etags(boolean etags) {
+        this.etags = etags;
+    }
+
+    public void taxesAndFees(BigDecimal taxesAndFees) {
+        this.taxesAndFees = taxesAndFees;
+    }
+
+    public List<Call> calls() {
+        return calls;
+    }
+
+    private byte[] prices(JsonNode cruiseCodes) throws IOException {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode prices = response.putArray("prices");
+        cruiseCodes.forEach(code -> {
+            ObjectNode price = prices.addObject();
+            price.put("cruiseCode", code.asText());
+            price.putObject("taxesAndFees").put("amount", taxesAndFees);
+        });
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        calls.add(new Call(exchange.getRequestURI().getPath(), exchange.getRemoteAddress().getPort(), gzip));
+        byte[] payload = body;
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            payload = compressed.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, payload.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(payload);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+}
@@ -0,0 +1,88 @@
+package com.plomteux.ncconnector.support;
+
+import com.plomteux.ncconnector.model.CruiseDetails;
+import com.plomteux.ncconnector.model.CruiseDetailsAllOfEmbarkationPort;
+import com.plomteux.ncconnector.model.Pricing;
+import com.plomteux.ncconnector.model.Sailings;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates itineraries in the shape of the upstream feed, with deterministic prices for a given seed.
+ */
+public final class SyntheticCatalogue {
+    public static final List<String> ROOM_TYPES = List.of("STUDIO", "INSIDE", "OCEANVIEW", "BALCONY", "MINISUITE", "SUITE", "HAVEN", "SPA");
+    private static final List<String> DESTINATIONS = List.of("CARIBBEAN", "ALASKA", "EUROPE", "HAWAII", "ASIA", "BAHAMAS", "BERMUDA", "MEXICO");
+    private static final List<String> PORTS = List.of("MIA", "FLL", "SEA", "BCN", "CIV", "HNL", "NYC", "LAX", "SJU", "TPA", "VAN", "SOU");
+
+    private SyntheticCatalogue() {
+    }
+
+    public static List<CruiseDetails> cruises(int cruiseCount, int sailingsPerCruise, long seed) {
+        Random random = new Random(seed);
+        List<CruiseDetails> cruises = new ArrayList<>(cruiseCount);
+        for (int c = 0; c < cruiseCount; c++) {
+            CruiseDetails cruise = new CruiseDetails();
+            cruise.setCode("SYN" + c);
+            cruise.setBundleType("CRUISE_ONLY");
+            cruise.setShipCode("SHIP" + (c % 17));
+            cruise.setDuration(BigDecimal.valueOf(3 + c % 12));
+            cruise.setGuestCount(BigDecimal.valueOf(2));
+            String embarkationPort = PORTS.get(c % PORTS.size());
+            cruise.setEmbarkationPort(new CruiseDetailsAllOfEmbarkationPort().code(embarkationPort));
+            cruise.setDestinationCodes(List.of(DESTINATIONS.get(c % DESTINATIONS.size()), DESTINATIONS.get((c + 3) % DESTINATIONS.size())));
+            List<String> portsOfCall = new ArrayList<>();
+            for (int p = 0; p < 5; p++) {
+                portsOfCall.add(PORTS.get((c + p * 5) % PORTS.size()));
+            }
+            cruise.setPortsOfCall(portsOfCall);
+            List<Sailings> sailings = new ArrayList<>(sailingsPerCruise);
+            for (int s = 0; s < sailingsPerCruise; s++) {
+                sailings.add(sailing(c * 1000L + s, LocalDate.of(2030, 1, 1).plusDays(c % 300 + s * 7L), cruise.getDuration().intValue(), random));
+            }
+            cruise.setSailings(sailings);
+            cruises.add(cruise);
+        }
+        return cruises;
+    }
+
+    /**
+     * {@code days} daily snapshots of the same cruises and sailings, oldest first, each priced with its own seed.
+     */
+    public static List<List<CruiseDetails>> history(int cruiseCount, int sailingsPerCruise, int days) {
+        List<List<CruiseDetails>> history = new ArrayList<>(days);
+        for (int day = 0; day < days; day++) {
+            history.add(cruises(cruiseCount, sailingsPerCruise, day));
+        }
+        return history;
+    }
+
+    private static Sailings sailing(long sailId, LocalDate departure, int duration, Random random) {
+        Sailings sailing = new Sailings();
+        sailing.setSailId(BigDecimal.valueOf(sailId));
+        sailing.setPackageId(BigDecimal.valueOf(sailId % 97));
+        sailing.setBundleType("CRUISE_ONLY");
+        sailing.setDepartureDate(String.valueOf(epochMillis(departure)));
+        sailing.setReturnDate(String.valueOf(epochMillis(departure.plusDays(duration))));
+        List<Pricing> pricing = new ArrayList<>(ROOM_TYPES.size());
+        BigDecimal base = BigDecimal.valueOf(300 + random.nextInt(2000));
+        for (int r = 0; r < ROOM_TYPES.size(); r++) {
+            Pricing price = new Pricing();
+            price.setCode(ROOM_TYPES.get(r));
+            price.setStatus("AVAILABLE");
+            price.setCombinedPrice(base.add(BigDecimal.valueOf(r * 250L + random.nextInt(100))));
+            pricing.add(price);
+        }
+        sailing.setPricing(pricing);
+        return sailing;
+    }
+
+    private static long epochMillis(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}